@@ -0,0 +1,150 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Adaptive Replacement Cache (Megiddo & Modha). Resident
+ *  blocks live in T1 (seen once recently) or T2 (seen at
+ *  least twice). B1 and B2 remember the block numbers of
+ *  blocks recently evicted from T1 and T2. A miss that hits
+ *  a ghost list moves the target size p of T1 towards the
+ *  list that would have kept the block.
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+public class ArcPolicy implements ReplacementPolicy {
+	private int capacity;				// c, number of frames
+	private int target = 0;				// p, target size of T1
+	private FrameList t1 = null;
+	private FrameList t2 = null;
+	private LinkedHashSet<Integer> b1 = new LinkedHashSet<Integer>();	// Oldest first
+	private LinkedHashSet<Integer> b2 = new LinkedHashSet<Integer>();
+
+	// Block whose ghost hit already adapted p in selectVictim()
+	private int adaptedBlock = -1;
+
+	public ArcPolicy(FrameTable frames)
+	{
+		capacity = frames.getFrameCount();
+		t1 = new FrameList(capacity);
+		t2 = new FrameList(capacity);
+	}
+
+	public void onHit(int frame, int blockId)
+	{
+		// Second use moves a block from T1 to T2
+		t1.remove(frame);
+		t2.pushFront(frame);
+	}
+
+	public void onFill(int frame, int blockId)
+	{
+		Integer key = Integer.valueOf(blockId);
+		if(adaptedBlock != blockId)
+		{
+			adapt(blockId);
+		}
+		adaptedBlock = -1;
+
+		if(b1.remove(key) || b2.remove(key))
+		{
+			t2.pushFront(frame);
+		}
+		else
+		{
+			t1.pushFront(frame);
+		}
+	}
+
+	public void onEvict(int frame, int blockId)
+	{
+		Integer key = Integer.valueOf(blockId);
+		if(t1.contains(frame))
+		{
+			t1.remove(frame);
+			b1.add(key);
+		}
+		else
+		{
+			t2.remove(frame);
+			b2.add(key);
+		}
+
+		// Keeping |T1| + |B1| <= c and the whole directory <= 2c
+		if(t1.size() + b1.size() > capacity)
+		{
+			removeOldest(b1);
+		}
+		while(t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity && !b2.isEmpty())
+		{
+			removeOldest(b2);
+		}
+	}
+
+	public void onInvalidate(int frame, int blockId)
+	{
+		t1.remove(frame);
+		t2.remove(frame);
+	}
+
+	/*
+	 *  ARC's REPLACE: evict from T1 if it is larger than its
+	 *  target (or equal to it and the missing block is a B2
+	 *  ghost), otherwise from T2.
+	 */
+	public int selectVictim(int blockId)
+	{
+		adapt(blockId);
+		adaptedBlock = blockId;
+
+		boolean inB2 = b2.contains(Integer.valueOf(blockId));
+		if(t1.size() > 0 && (t1.size() > target || (inB2 && t1.size() == target)))
+		{
+			return t1.tail();
+		}
+		if(t2.size() > 0)
+		{
+			return t2.tail();
+		}
+		return t1.tail();
+	}
+
+	// Hits need the lists reordered under the lock
+	public boolean usesReferenceBits()
+	{
+		return false;
+	}
+
+	// T2 holds the blocks seen at least twice
+	public boolean isCold(int frame, int blockId)
+	{
+		return t1.contains(frame);
+	}
+
+	// Moves p after a miss on blockId that hit a ghost list
+	private void adapt(int blockId)
+	{
+		Integer key = Integer.valueOf(blockId);
+		if(b1.contains(key))
+		{
+			int delta = Math.max(1, b2.size() / Math.max(1, b1.size()));
+			target = Math.min(capacity, target + delta);
+		}
+		else if(b2.contains(key))
+		{
+			int delta = Math.max(1, b1.size() / Math.max(1, b2.size()));
+			target = Math.max(0, target - delta);
+		}
+	}
+
+	private void removeOldest(LinkedHashSet<Integer> ghosts)
+	{
+		Iterator<Integer> it = ghosts.iterator();
+		if(it.hasNext())
+		{
+			it.next();
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Operations the kernel needs from a disk block cache.
+ *  Cache is a single cache with one lock, ShardedCache
+ *  splits the blocks over several independent Caches.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+public interface BlockCache {
+	// Copies block blockId into buffer[], filling it from disk on a miss
+	boolean read(int blockId, byte buffer[]);
+
+	// Copies buffer[] into the cached copy of blockId (no write-through)
+	boolean write(int blockId, byte buffer[]);
+
+	// Reads blockIds[i] into buffers[i] for every i in one batch
+	boolean readv(int blockIds[], byte buffers[][]);
+
+	// Writes buffers[i] to blockIds[i] for every i in one batch
+	boolean writev(int blockIds[], byte buffers[][]);
+
+	// Copies buffer.length bytes at offset within blockId into buffer[]
+	boolean readPartial(int blockId, int offset, byte buffer[]);
+
+	// Copies buffer[] into blockId at offset, leaving the rest of the block
+	boolean writePartial(int blockId, int offset, byte buffer[]);
+
+	// View of blockId's frame, which stays cached until unpin()
+	ByteBuffer pin(int blockId, boolean write);
+
+	// Releases one pin(blockId, write)
+	void unpin(int blockId, boolean write);
+
+	// read() that completes the future when the block is in buffer[]
+	CompletableFuture<Boolean> readAsync(int blockId, byte buffer[]);
+
+	// write() that completes the future when buffer[] is cached
+	CompletableFuture<Boolean> writeAsync(int blockId, byte buffer[]);
+
+	// Writes every dirty block back to disk
+	void sync();
+
+	// Invalidates every cached block
+	void flush();
+
+	// blockId was just written to disk by a raw write, which may
+	// not have gone through the cache
+	void rawWritten(int blockId);
+
+	// Number of cache frames
+	int getTableSize();
+
+	// Number of frames holding blocks not yet written back
+	int getDirtyCount();
+
+	// Changes the number of frames, keeping as many cached blocks as fit
+	boolean resize(int cacheBlocks);
+
+	// (blockId << 1 | reference bit) of every cached block
+	long[] snapshot();
+
+	// Reads the blocks of a snapshot() in, in ascending block order
+	void warm(long entries[]);
+
+	// Counters and latency histograms since the cache was created
+	CacheStats getStats();
+}
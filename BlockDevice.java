@@ -0,0 +1,47 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  A block device the kernel can serve RAWREAD, RAWWRITE
+ *  and SYNC with directly, instead of going through the
+ *  simulated Disk thread and the ioQueue handshake.
+ *  Kernel BOOT picks one with -Dthreados.disk (see Kernel).
+ */
+
+public interface BlockDevice {
+	// Copies block blockId into buffer[]. False if blockId is out of range.
+	boolean read(int blockId, byte buffer[]);
+
+	// Copies buffer[] into block blockId. False if blockId is out of range.
+	boolean write(int blockId, byte buffer[]);
+
+	// Reads blockIds[i] into buffers[i] for every i. Devices that
+	// can work on several blocks at once override this.
+	default boolean readv(int blockIds[], byte buffers[][])
+	{
+		boolean success = true;
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			success &= read(blockIds[i], buffers[i]);
+		}
+		return success;
+	}
+
+	// Writes buffers[i] to blockIds[i] for every i
+	default boolean writev(int blockIds[], byte buffers[][])
+	{
+		boolean success = true;
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			success &= write(blockIds[i], buffers[i]);
+		}
+		return success;
+	}
+
+	// Makes every write so far durable
+	boolean sync();
+
+	int getBlockSize();
+
+	int getBlockCount();
+}
@@ -0,0 +1,155 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  BlockIndex maps a disk block number to the cache
+ *  frame that currently holds it. It is a primitive
+ *  int -> int open addressing table (linear probing),
+ *  so lookups never box and never walk the page table.
+ *
+ *  NOTE:	Deletion uses backward shifting instead of
+ *  		tombstones, so the table never degrades no
+ *  		matter how many fills and evictions occur.
+ */
+
+import java.util.Arrays;
+
+public class BlockIndex {
+	// Key stored in unused slots. Block numbers are >= 0.
+	private static final int EMPTY = -1;
+
+	private int[] keys;		// Block numbers
+	private int[] values;	// Frame numbers
+	private int mask;		// keys.length - 1
+	private int size;		// Number of mappings
+
+	/*
+	 *  Creates an index able to hold maxEntries mappings
+	 *  while keeping the load factor at or below 0.5
+	 */
+	public BlockIndex(int maxEntries)
+	{
+		if(maxEntries < 1)
+		{
+			throw new IllegalArgumentException("Error in BlockIndex(int maxEntries): "
+					+ "maxEntries must be > 0");
+		}
+		int capacity = Integer.highestOneBit(maxEntries) << 2;
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+	}
+
+	// Spreads block numbers so runs of consecutive
+	// blocks don't pile up in neighbouring slots.
+	private int slot(int key)
+	{
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/*
+	 *  Returns the frame holding blockId, or -1
+	 *  if the block is not cached.
+	 */
+	public int get(int blockId)
+	{
+		int[] k = keys;
+		int m = k.length - 1;
+		int i = slot(blockId) & m;
+		// Probing is bounded so a racing reader
+		// can never spin forever.
+		for(int n = 0; n <= m; n++)
+		{
+			int current = k[i];
+			if(current == blockId)
+			{
+				return values[i];
+			}
+			if(current == EMPTY)
+			{
+				return -1;
+			}
+			i = (i + 1) & m;
+		}
+		return -1;
+	}
+
+	/*
+	 *  Maps blockId to frame, replacing any old mapping.
+	 */
+	public void put(int blockId, int frame)
+	{
+		if(blockId < 0)
+		{
+			throw new IllegalArgumentException("Error in BlockIndex.put(blockId, frame): "
+					+ "blockId must be >= 0");
+		}
+		int i = slot(blockId);
+		while(keys[i] != EMPTY)
+		{
+			if(keys[i] == blockId)
+			{
+				values[i] = frame;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		values[i] = frame;
+		keys[i] = blockId;
+		size++;
+	}
+
+	/*
+	 *  Removes the mapping for blockId. Returns the frame
+	 *  it was mapped to, or -1 if there was none.
+	 */
+	public int remove(int blockId)
+	{
+		int i = slot(blockId);
+		while(keys[i] != blockId)
+		{
+			if(keys[i] == EMPTY)
+			{
+				return -1;
+			}
+			i = (i + 1) & mask;
+		}
+		int frame = values[i];
+
+		// Shifting later entries of the same probe
+		// chain back into the hole.
+		int hole = i;
+		int j = (i + 1) & mask;
+		while(keys[j] != EMPTY)
+		{
+			int home = slot(keys[j]);
+			// Entry at j may move into the hole only if its
+			// home slot is not cyclically within (hole, j].
+			if(((j - home) & mask) >= ((j - hole) & mask))
+			{
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return frame;
+	}
+
+	// Removes every mapping
+	public void clear()
+	{
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	// Returns number of cached blocks indexed
+	public int size()
+	{
+		return size;
+	}
+}
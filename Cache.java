@@ -13,9 +13,14 @@
  * 
  */
 
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class Cache {
+public class Cache implements BlockCache {
 	// verbose only used to debug
 	private boolean verbose = false;
 	private int maxIts = 5; // Max iterations for debug output
@@ -25,6 +30,15 @@ public class Cache {
 	 * parameters
 	 */
 	public Cache(int blkSize, int cacheBlocks) 
+	{
+		this(blkSize, cacheBlocks, new CacheOptions());
+	}
+
+	/*
+	 * Constructor with blockSize, cacheBlocks and
+	 * options such as off-heap storage
+	 */
+	public Cache(int blkSize, int cacheBlocks, CacheOptions options) 
 	{
 		// First checking if parameters are valid
 		if(blkSize < 1 || cacheBlocks < 1)
@@ -33,342 +47,429 @@ public class Cache {
 					+ " parameters must be > 0");
 		}
 
-		// Initializing pageTable[pages]
-		pageTable = new Entry[cacheBlocks];
-		for(int i = 0; i < cacheBlocks; i++)
+		// Initializing frames. Every frame starts with
+		// blockFrameNumber = -1
+		// referenceBit = false
+		// dirtyBit = false
+		this.options = options;
+		timing = options.latencyStats;
+		frames = new FrameTable(blkSize, cacheBlocks, options.offHeap);
+		// Replacement policy named in the options
+		policy = options.createPolicy(frames);
+		lockFreeHits = policy.usesReferenceBits();
+		if(options.admission && cacheBlocks > 1)
+		{
+			admission = new TinyLfuAdmission(frames, options);
+		}
+		// Nothing is cached yet, so the index starts empty
+		blockIndex = new BlockIndex(cacheBlocks);
+		// Disk I/O needs a byte[], block data may be off-heap
+		scratch = new byte[blkSize];
+		// No frame is pinned
+		pins = new int[cacheBlocks];
+		writePins = new int[cacheBlocks];
+		
+		// Optional write-behind thread
+		if(options.flusher)
+		{
+			flusher = new CacheFlusher(this, cacheBlocks, options);
+			flusher.start();
+		}
+		
+		// Optional sequential read-ahead thread
+		if(options.readAhead)
+		{
+			prefetchBuffer = new byte[blkSize];
+			readAhead = new ReadAhead(this, cacheBlocks, options);
+			readAhead.start();
+		}
+		
+		// Optional compressed tier below the frames
+		if(options.compressedTier)
 		{
-			// Default constructor will create 
-			// entries with
-			// blockFrameNumber = -1
-			// referenceBit = false
-			// dirtyBit = false
-			pageTable[i] = new Entry(blkSize);
-			pageTable[i].blockSize = blkSize;
-			// Clock first points to first element
-			clockPtr = 0;
+			tier = new CompressedTier(blkSize, tierCapacity(blkSize, cacheBlocks));
 		}
 	}
 
-	// ------------------- PRIVATE ENTRY CLASS -------------------
     /*
-     * Private class for an entry
+     * Cache fields 
      */
-    private class Entry 
-    {
-    	/*
-    	 *  Private fields
-    	 */
-    	// Disk block number of cached data
-    	private int blockFrameNumber;
-    	
-    	// Ref bit set to 1 whenever this block is accessed.
-    	// Reset to 0 in the 2nd chance alg when looking for 
-    	// a victim. 
-    	private boolean referenceBit; 
-    	
-    	// Dirty bit set to 1 whenever this block has been modified
-    	// and the changed data has not been written back to the disk.
-    	// Reset to 0 when the block is written back to the disk. 
-    	private boolean dirtyBit;
-    	
-    	// Size of cache block in bytes
-    	private int blockSize;
-    	
-    	// Byte array storing cache data
-    	private byte cacheBlock[];
-    	
-    	// --------------------------------------------------
-    	// --------------- Entry Constructors ---------------
-    	// --------------------------------------------------
+    // Block numbers, ref/dirty bits and data of every
+    // frame, kept as parallel arrays (no per-entry objects). 
+    // Volatile because resize() replaces it under lock-free readers. 
+    private volatile FrameTable frames = null;
+    
+    // Chooses victims, enhanced 2nd chance alg. by default
+    private ReplacementPolicy policy = null;
+    
+    // policy.usesReferenceBits(), read without the lock. resize()
+    // replaces policy but always with one of the same kind. 
+    private final boolean lockFreeHits;
+    
+    // W-TinyLFU admission filter, null if disabled. 
+    // Volatile because readOptimistic() reads it without the lock. 
+    private volatile TinyLfuAdmission admission = null;
+    
+    // Maps blockId -> frame for every valid 
+    // frame, so lookups don't scan the table. 
+    private volatile BlockIndex blockIndex = null;
+    
+    // Kept to rebuild the policy and filter on resize()
+    private CacheOptions options = null;
+    
+    // Staging buffer for writing a frame back to disk
+    private byte scratch[] = null;
+    
+    // Background write-behind thread, null if disabled
+    private CacheFlusher flusher = null;
+    
+    // Most dirty neighbours written back on each side of an
+    // evicted dirty block
+    private static final int WRITE_BACK_NEIGHBOURS = 8;
+    
+    // Most blocks handed to the disk in one RAWWRITEV
+    private static final int WRITE_BACK_BATCH = 64;
+    
+    // Most misses of a readv() fetched in one RAWREADV, and
+    // most blocks warm() hands to one readv()
+    private static final int READ_BATCH = 64;
+    
+    // Where the flusher's next search for a dirty frame starts
+    private int flushCursor = 0;
+    
+    // Sequential read-ahead thread, null if disabled
+    private ReadAhead readAhead = null;
+    
+    // Disk buffer of the read-ahead thread
+    private byte prefetchBuffer[] = null;
+    
+    // Number of pin() views held on each frame, and how many 
+    // of them may write. Pinned frames are never evicted. 
+    private int pins[] = null;
+    private int writePins[] = null;
+    
+    // Serves readAsync() misses and writeAsync(), started on first use
+    private ExecutorService asyncWorker = null;
+    
+    // writeAsync() buffers not applied yet, oldest first per 
+    // block. Every locked access to a block applies its pending
+    // writes first, so they stay in order with everything else. 
+    // Lock-free reads are off while any are pending. 
+    private HashMap<Integer, ArrayDeque<AsyncWrite>> asyncWrites = new HashMap<Integer, ArrayDeque<AsyncWrite>>();
+    private volatile int asyncWritesPending = 0;
+    
+    private static class AsyncWrite {
+    	private byte buffer[];
+    	private boolean result;
     	
-    	/*
-    	 *  Default constructor w/o parameters
-    	 */
-    	public Entry()
-    	{
-    		// blkFrameNum, refBit, dirtyBit, blkSize, 
-    		this(-1, false, false, 0);
+    	private AsyncWrite(byte buffer[]) {
+    		this.buffer = buffer;
     	}
-    	
-    	/*
-    	 *  Single parameter constructor
-    	 */
-    	public Entry(int blockSize)
+    }
+    
+    // Blocks readAsync() is reading from the disk without the 
+    // lock: block -> { readers, 1 if the block was filled since }
+    private HashMap<Integer, int[]> asyncFetches = new HashMap<Integer, int[]>();
+    
+    // Compressed copies of clean evicted blocks, null if disabled
+    private CompressedTier tier = null;
+    
+    // Blocks seen to be all zeroes on the disk, when read or 
+    // written back. A dirty all-zero copy of one of them needs 
+    // no write-back. Kernel reports every raw write through 
+    // rawWritten(), which forgets the block, and flush() 
+    // forgets them all. 
+    private BitSet zeroOnDisk = new BitSet();
+    
+    // Hit, miss, eviction and write-back counts, kept across 
+    // resize(). Latencies are only timed when timing is set. 
+    private CacheStats stats = new CacheStats();
+    private boolean timing = false;
+    
+    
+    
+
+    // ------------------------ findFreePage() ------------------
+    
+    /*
+     *  Returns the next free page, taken from the top of
+     *  the free frame stack in O(1). If all pages are 
+     *  being used, returns -1 and the method that calls 
+     *  findFreePage() will look for a victim
+     */
+    private int findFreePage() {
+    	return frames.peekFree();
+    }
+    
+    // ---------------------- nextVictim( blockId ) ----------------------
+    
+    /*
+     *  Next victim for missing blockId, chosen by the
+     *  replacement policy. Returns -1 if no frame can 
+     *  be replaced. 
+     */
+    private int nextVictim(int blockId) {
+    	int victim = policy.selectVictim(blockId);
+    	if(verbose)
     	{
-    		this(-1, false, false, blockSize);
-    	}
-    	
-    	/*
-    	 *  Constructor with parameters for all fields, 
-    	 *  blockFrameNum, referenceBit, and dirtyBit, blkSize
-    	 */
-    	public Entry(int blockFrameNum, boolean refBit, boolean dirtyB, int size)
-    	{
-    		this.blockFrameNumber = blockFrameNum;
-    		this.referenceBit = refBit;
-    		this.dirtyBit = dirtyB;
-    		this.blockSize = size;
-    		// Array initialized with 0s by default.
-    		this.cacheBlock = new byte[size];	
+    		SysLib.cerr("Victim for blockId == " + blockId + " is frame " + victim 
+    				+ " (ref, dirty) = (" + (victim > -1 && frames.isReferenced(victim)) 
+    				+ ", " + (victim > -1 && frames.isDirty(victim)) + ") \n");
     	}
-    	
-    	// Invalidating entry
-    	public void invalidate()
+        return victim;
+    }
+    
+    // ------------------------- evict( victim ) -------------------------
+    /*
+     *  Removes the block held by victim from the cache, 
+     *  writing it back first if it's dirty. The frame 
+     *  is free afterwards. 
+     */
+    private void evict(int victim) {
+    	stats.evict(frames.isReferenced(victim), frames.isDirty(victim));
+    	if(frames.isDirty(victim))
     	{
-    		this.blockFrameNumber = -1;
+    		writeBackRun(victim);
     	}
-    	// -------- Setting and clearing reference and dirty bits --------
-    	
-    	public void setRefBit()
+    	int oldBlkId = frames.getBlock(victim);
+    	if(admission != null && admission.inWindow(victim))
     	{
-    		this.referenceBit = true;
+    		// Policy never saw blocks in the window
+    		admission.removeFromWindow(victim);
     	}
-    	
-    	public void clearRefBit()
+    	else if(readAhead != null && readAhead.isPrefetched(victim))
     	{
-    		this.referenceBit = false;
+    		// Never read, so no history: refetching it later
+    		// is not a reuse (LIRS) or a ghost hit (ARC)
+    		policy.onInvalidate(victim, oldBlkId);
     	}
-    	
-    	public void setDirtyBit()
+    	else
     	{
-    		this.dirtyBit = true;
+    		policy.onEvict(victim, oldBlkId);
     	}
-    	
-    	public void clearDirtyBit()
+    	if(readAhead != null)
     	{
-    		this.dirtyBit = false;
+    		readAhead.onEvict(victim);
     	}
-    	
-    	// ------------------ Getter Methods --------------------
-    	/*
-    	 *  Returns block frame number
-    	 */
-    	public int getBFN()
+    	if(tier != null && !frames.isDirty(victim))
     	{
-    		return blockFrameNumber;
+    		// Demoted instead of dropped
+    		frames.readData(victim, scratch);
+    		tier.put(oldBlkId, scratch);
     	}
-    	
-    	/*
-    	 *  Returns block size
-    	 */
-    	public int getBlockSize()
+    	blockIndex.remove(oldBlkId);
+    	frames.invalidate(victim);
+    }
+    
+    // ------------------------- fill( frame, blockId, data[] ) -------------------------
+    /*
+     *  Places data[] for blockId into free frame and
+     *  makes it visible to lookups. 
+     */
+    private void fill(int frame, int blockId, byte data[]) {
+    	if(tier != null)
     	{
-    		return blockSize;
+    		// Tier copy is stale if data[] is a write
+    		tier.remove(blockId);
     	}
-    	
-    	public boolean getRefBit()
+    	int fetch[] = asyncFetches.get(blockId);
+    	if(fetch != null)
     	{
-    		return referenceBit;
+    		// An async disk read of blockId may now return 
+    		// data older than a write-back of this copy
+    		fetch[1] = 1;
     	}
-    	
-    	public boolean getDirtyBit()
+    	stats.fill();
+    	frames.beginUpdate(frame);
+    	frames.setBlock(frame, blockId);
+    	frames.writeData(frame, data);
+    	blockIndex.put(blockId, frame);
+    	frames.endUpdate(frame);
+    	frames.setReferenced(frame);
+    	enterPolicy(frame, blockId);
+    }
+    
+    // ------------------------- fetch( blockId, buffer[] ) -------------------------
+    /*
+     *  Reads missing blockId from the compressed tier if it's
+     *  there, from the disk otherwise. Returns 0 on success,
+     *  like SysLib.rawread(). 
+     */
+    private int fetch(int blockId, byte buffer[]) {
+    	// Tier copies are clean, so they match the disk too
+    	if(tier != null && tier.take(blockId, buffer))
     	{
-    		return dirtyBit;
+    		noteDiskCopy(blockId, buffer, true);
+    		return 0;
     	}
+    	int result = SysLib.rawread(blockId, buffer);
+    	noteDiskCopy(blockId, buffer, result == 0);
+    	return result;
     }
     
-    
-    // ----------------- END OF ENTRY CLASS -----------------
-    
-
+    // ------------------------- noteDiskCopy( blockId, data[], known ) -------------------------
     /*
-     * Cache fields 
+     *  Records whether the disk now holds zeroes for blockId,
+     *  after data[] was read from or written to it. known is 
+     *  false if the transfer failed and the disk copy is unknown. 
      */
-    private Entry[] pageTable = null;
-    
-    // clock hand used in 2nd chance alg. 
-    private int clockPtr;
+    private void noteDiskCopy(int blockId, byte data[], boolean known) {
+    	zeroOnDisk.set(blockId, known && isZero(data));
+    }
     
+    // True if writing data[] back over blockId would change nothing
+    private boolean skipsWriteBack(int blockId, byte data[]) {
+    	return zeroOnDisk.get(blockId) && isZero(data);
+    }
     
+    private static boolean isZero(byte data[]) {
+    	for(int i = 0; i < data.length; i++)
+    	{
+    		if(data[i] != 0)
+    		{
+    			return false;
+    		}
+    	}
+    	return true;
+    }
     
-
-    // ------------------------ findFreePage() ------------------
+    // ------------------------- enterPolicy( frame, blockId ) -------------------------
+    /*
+     *  Hands a newly filled (or unpinned) frame to the 
+     *  admission window or the replacement policy. 
+     */
+    private void enterPolicy(int frame, int blockId) {
+    	if(admission == null)
+    	{
+    		policy.onFill(frame, blockId);
+    		return;
+    	}
+    	// New blocks start in the admission window. If that 
+    	// overflows while frames are still free, the oldest
+    	// block moves to the main region without a contest. 
+    	admission.addToWindow(frame);
+    	if(admission.isWindowOverLimit())
+    	{
+    		graduate(admission.windowCandidate());
+    	}
+    }
     
+    // ------------------------- leavePolicy( frame, blockId ) -------------------------
     /*
-     *  Looks for the next free page. If all pages
-     *  are being used, method that calls 
-     *  findFreePage() will look for a victim
+     *  Takes frame away from the window or the replacement 
+     *  policy without evicting it, so it can't be a victim. 
      */
-    private int findFreePage() {
-    	// Starting and ending indexes
-    	int startHere = getClockPtr();
-    	int endHere = startHere + getTableSize();
-    	
-    	// Will circularly cycle through array
-    	for(int i = startHere; i < endHere; i++)
+    private void leavePolicy(int frame, int blockId) {
+    	if(admission != null && admission.inWindow(frame))
     	{
-    		int index = i % getTableSize();
-    		// Retrieving and checking
-    		// block frame number. 
-    		if(pageTable[index].getBFN() == -1)
-    		{
-    			// We've found block that's not being used!
-    			//incrClockPtr();
-    			return index;
-    		}
+    		admission.removeFromWindow(frame);
+    	}
+    	else
+    	{
+    		policy.onInvalidate(frame, blockId);
     	}
-    	// At this point, all pages being used, 
-    	// need to run enhanced 2nd chance alg. 
-    	return -1;
     }
     
-    // ---------------------- nextVictom() ----------------------
+    // ------------------------- graduate( frame ) -------------------------
+    /*
+     *  Moves frame from the admission window to the
+     *  region managed by the replacement policy. 
+     */
+    private void graduate(int frame) {
+    	admission.removeFromWindow(frame);
+    	policy.onFill(frame, frames.getBlock(frame));
+    }
     
+    // ------------------------- hit( frame, blockId ) -------------------------
     /*
-     *  Next victim found by using 
-     *  enhanced 2nd chance algorithm.
-     *  Cases are looked for in decreasing
-     *  replacement priority
+     *  Bookkeeping for a hit found under the lock. 
      */
-    private int nextVictim() {
-    	int victim = -1;
-    	// First look for case of highest priority
-    	// to replace: 
-    	// ( ref = 0, dirty = 0 )
-    	victim = findCase(false, false);
-    	if(victim > -1)
+    private void hit(int frame, int blockId) {
+    	stats.hit();
+    	frames.setReferenced(frame);
+    	if(pins[frame] > 0)
     	{
-    		if(verbose)
+    		// Neither the window nor the policy holds pinned frames
+    		if(admission != null)
     		{
-    			SysLib.cerr("Case ref = 0, dirty = 0 FOUND on first scan. ");
+    			admission.record(blockId);
     		}
-    		return victim;
+    		return;
     	}
-    	
-    	if(verbose)
-		{
-			SysLib.cerr("Case ref = 0, dirty = 0 NOT found after FIRST SCAN \n");
-			
-		}
-    	
-    	// Looking again in case all 
-    	// reference bits were cleared
-    	// in the previous search
-    	victim = findCase(false, false);
-    	if(victim > -1)
+    	if(readAhead != null && readAhead.isPrefetched(frame))
     	{
-    		return victim;
+    		// First use of a prefetched block, not a reuse 
+    		// the window or the policy should promote
+    		if(admission != null)
+    		{
+    			admission.record(blockId);
+    		}
+    		return;
     	}
-    	
-    	if(verbose)
-		{
-			SysLib.cerr("Case ref = 0, dirty = 0 NOT found after second scan \n");
-			
-		}
-    	
-    	if(verbose)
+    	if(admission == null)
     	{
-    		SysLib.cerr("About to sync() \n");
-    		try									/// FOR DEBUGGING
-			{
-				Thread.sleep(2000);
-			}
-			catch(InterruptedException ex)
-			{
-				Thread.currentThread().interrupt();
-			}									// DEBUG END
+    		policy.onHit(frame, blockId);
+    		return;
     	}
-    	// At this point, need to sync dirty entries
-    	this.sync();
-    	// looking for victim after sync
-    	victim = findCase(false, false);
-    	if(victim > -1)
+    	admission.record(blockId);
+    	if(admission.inWindow(frame))
     	{
-    		return victim;
+    		admission.onHit(frame);
     	}
-    	
-    	if(verbose)
-		{
-    		SysLib.cerr("NO VICTIM FOUND AFTER SYNC() \n");
-    		try									/// FOR DEBUGGING
-			{
-				Thread.sleep(2000);
-			}
-			catch(InterruptedException ex)
-			{
-				Thread.currentThread().interrupt();
-			}									// DEBUG END
-			SysLib.cerr("Case ref = 0, dirty = 0 NOT found after sync \n");
-			
-		}
-    	// At this point, need to 
-    	// look for case:
-    	// ( ref = 1, dirty = 1 )
-    	victim = findCase(false, false);
-    	if(victim > -1)
+    	else
     	{
-    		return victim;
+    		policy.onHit(frame, blockId);
     	}
-    	
-    	// Code should NOT reach this point!!!!!!!!!!!
-    	SysLib.cerr("No cases of valid (rev, dirty) found (NOT POSSIBLE UNDER NORMAL CIRCUMSTANCES) \n");
-    	
-    	
-        return victim;
     }
     
-    // ----------------------- findCase(ref, dirty) ------------------
-    
+    // ------------------------- claimFrame( blockId ) -------------------------
     /*
-     *  Helps nextVictim() by looking at combinations of 
-     *  (refBit, dirtyBit). This method will 
-     *  change the reference bit.
+     *  Returns a free frame for missing blockId, evicting
+     *  a victim if there is none. Returns -1 if nothing 
+     *  can be evicted. 
      */
-    private int findCase(boolean ref, boolean dirty)
-    {
-    	int start = getClockPtr();			// Begin iterations here
-    	int end = start + getTableSize();	// End iterations here
-    	int currentindex = 0;				// Current entry to check
-    	boolean currentRef = false;			// Current refBit of current entry
-    	boolean currentDirty = false;		// Current dirtyBit of current entry
-    	
-    	// Iterating over pageTable[currentIndex]
-    	// Note: this should also CLEAR the refBit, 
-    	// i.e., it should be set to false or 0.
-    	if(verbose)
+    private int claimFrame(int blockId) {
+    	stats.miss();
+    	if(admission != null)
     	{
-    		boolean startR = pageTable[start].getRefBit();
-    		boolean startD = pageTable[start].getDirtyBit();
-    		SysLib.cerr("From findCase(0, 0) start = getClockPtr() == " + start + "(rev, dirty)= (" + startR + ", " + startD + ")\n");
+    		// Misses count towards popularity too
+    		admission.record(blockId);
     	}
-    	for(int i = start; i < end; i++)
+    	int frame = this.findFreePage();
+    	if(frame > -1)
     	{
-    		currentindex = i % getTableSize();
-    		// Retrieving reference and dirty bitss
-    		currentRef = pageTable[currentindex].getRefBit();
-    		currentDirty = pageTable[currentindex].getDirtyBit();
-    		if( (currentRef == ref) && (currentDirty == dirty) )
-    		{
-    			// Case found!!!!!
-    			incrClockPtr();
-    			return currentindex;
-    		}
-    		// If case not found in current iteration, 
-    		// clear reference bit (it may or may not 
-    		// be cleared already...). 
-    		pageTable[currentindex].clearRefBit();
-    		// Incrementing clock pointer
-    		incrClockPtr();
-    		
+    		return frame;
     	}
-    	
-    	//  At this point, no cases matching
-    	//  (ref, dirty) were found...
-    	return -1;
-    }	// End of findCase( ref, dirty )
-    
-    // Returns current location where
-    // clock points. 
-    private int getClockPtr()
-    {
-    	return clockPtr;
+    	if(admission != null && admission.isWindowFull())
+    	{
+    		return claimFrameAdmitted(blockId);
+    	}
+    	frame = this.nextVictim(blockId);
+    	if(frame > -1)
+    	{
+    		evict(frame);
+    	}
+    	return frame;
     }
     
-    // Moving the clock pointer
-    // ahead by one. 
-    private void incrClockPtr()
-    {
-    	clockPtr = (clockPtr + 1) % getTableSize();
+    // ------------------------- claimFrameAdmitted( blockId ) -------------------------
+    /*
+     *  W-TinyLFU contest between the oldest block in the 
+     *  full admission window and the policy's victim. The 
+     *  more frequently used one stays; the loser's frame 
+     *  is returned for blockId, which enters the window. 
+     */
+    private int claimFrameAdmitted(int blockId) {
+    	int candidate = admission.windowCandidate();
+    	int victim = this.nextVictim(blockId);
+    	if(victim > -1 && admission.admit(frames.getBlock(candidate), frames.getBlock(victim)))
+    	{
+    		evict(victim);
+    		graduate(candidate);
+    		return victim;
+    	}
+    	evict(candidate);
+    	return candidate;
     }
 
     // ------------------------- writeBack( victimEntry ) -------------------------
@@ -383,19 +484,122 @@ public class Cache {
     	{
     		throw new IllegalArgumentException("Error in writeBack(victimEnt): argument must be a valid array index.");
     	}
-    	if(pageTable[victimEntry].getDirtyBit() == false)
+    	if(frames.isDirty(victimEntry) == false)
     	{
     		throw new IllegalArgumentException("Error in writeBack(victimEnt): Entry is not dirty.");
     	}
     	
     	// Getting physical  block frame number
-    	int physFrame = pageTable[victimEntry].getBFN(); 
+    	int physFrame = frames.getBlock(victimEntry); 
     	// Writing byte data in victimEntry to physFrame
-    	SysLib.rawwrite(physFrame, pageTable[victimEntry].cacheBlock);
-    	pageTable[victimEntry].clearDirtyBit();
+    	frames.readData(victimEntry, scratch);
+    	if(skipsWriteBack(physFrame, scratch))
+    	{
+    		stats.zeroWriteBack(1);
+    		frames.clearDirty(victimEntry);
+    		return;
+    	}
+    	long start = now();
+    	noteDiskCopy(physFrame, scratch, SysLib.rawwrite(physFrame, scratch) == 0);
+    	stats.writeBack(1, elapsed(start));
+    	frames.clearDirty(victimEntry);
     	
     }
 
+    // ------------------------- writeBackRun( victim ) -------------------------
+    /*
+     *  Writes back dirty victim together with the run of
+     *  dirty cached blocks numbered right before and after 
+     *  it, in ascending block order. The disk head is already 
+     *  there, and the neighbours become clean, cheap victims. 
+     */
+    private void writeBackRun(int victim) {
+    	int blockId = frames.getBlock(victim);
+    	int first = blockId;
+    	while(blockId - first < WRITE_BACK_NEIGHBOURS && first > 0 && isDirtyBlock(first - 1))
+    	{
+    		first--;
+    	}
+    	int last = blockId;
+    	while(last - blockId < WRITE_BACK_NEIGHBOURS && isDirtyBlock(last + 1))
+    	{
+    		last++;
+    	}
+    	if(first == last)
+    	{
+    		writeBack(victim);
+    		return;
+    	}
+    	int run[] = new int[last - first + 1];
+    	for(int b = first; b <= last; b++)
+    	{
+    		run[b - first] = blockIndex.get(b);
+    	}
+    	writeBackFrames(run, run.length);
+    }
+    
+    // ------------------------- writeBackFrames( list[], count ) -------------------------
+    /*
+     *  Writes back the first count dirty frames of list[], in 
+     *  that order, with vectored RAWWRITEV calls of up to 
+     *  WRITE_BACK_BATCH blocks. A striped or queued disk then
+     *  works on a whole batch at once. All-zero blocks the 
+     *  disk already holds as zeroes are left out. 
+     */
+    private void writeBackFrames(int list[], int count) {
+    	for(int first = 0; first < count; first += WRITE_BACK_BATCH)
+    	{
+    		int n = Math.min(WRITE_BACK_BATCH, count - first);
+    		int blockIds[] = new int[n];
+    		byte buffers[][] = new byte[n][frames.getBlockSize()];
+    		int kept = 0;
+    		for(int i = 0; i < n; i++)
+    		{
+    			blockIds[kept] = frames.getBlock(list[first + i]);
+    			frames.readData(list[first + i], buffers[kept]);
+    			if(!skipsWriteBack(blockIds[kept], buffers[kept]))
+    			{
+    				kept++;
+    			}
+    		}
+    		stats.zeroWriteBack(n - kept);
+    		if(kept > 0)
+    		{
+    			blockIds = Arrays.copyOf(blockIds, kept);
+    			buffers = Arrays.copyOf(buffers, kept);
+    			long start = now();
+    			boolean written = (rawwritev(blockIds, buffers) == 0);
+    			stats.writeBack(kept, elapsed(start));
+    			for(int i = 0; i < kept; i++)
+    			{
+    				noteDiskCopy(blockIds[i], buffers[i], written);
+    			}
+    		}
+    		for(int i = 0; i < n; i++)
+    		{
+    			frames.clearDirty(list[first + i]);
+    		}
+    	}
+    }
+    
+    // SysLib has no wrapper for the vectored raw write
+    private static int rawwritev(int blockIds[], byte buffers[][]) {
+    	return Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, Kernel.RAWWRITEV, 0, 
+    			new Object[] { blockIds, buffers });
+    }
+    
+    // Nor for the vectored raw read
+    private static int rawreadv(int blockIds[], byte buffers[][]) {
+    	return Kernel.interrupt(Kernel.INTERRUPT_SOFTWARE, Kernel.RAWREADV, 0, 
+    			new Object[] { blockIds, buffers });
+    }
+    
+    // True if blockId is cached and dirty
+    private boolean isDirtyBlock(int blockId) {
+    	int frame = blockIndex.get(blockId);
+    	return frame > -1 && frames.isDirty(frame);
+    }
+
     // --------------------- read( blockId, buffer[] ) -------------------------
     /*
      *  Takes data from cache block associated with blockId
@@ -403,85 +607,173 @@ public class Cache {
      *  in cache, reads from disk. Must then place this data
      *  in the cache, so it will look for an open spot or
      *  a victim to replace. 
+     *  
+     *  Hits are first tried without taking the cache lock, 
+     *  so readers of cached blocks never queue behind a miss
+     *  that is busy writing back a dirty victim. 
      */
-    public synchronized boolean read(int blockId, byte buffer[]) {
-    	
-    	int tableLength = this.getTableSize();
-    	int start = getClockPtr();			// Begin iterations here
-    	int end = start + tableLength;		// End iterations here
-    	int currentIndex = 0;				// Current entry to check
-    	int currBlkId = -1;
-    	for(int i = start; i < end; i++)
-    	{
-    		currentIndex = i % tableLength;
-    		// Retrieving current block frame number in entry
-    		currBlkId = pageTable[currentIndex].getBFN();
-    		if(currBlkId == blockId)
-    		{
-    			// Block found!!!
-    			// Copying data in cache block into buffer[]
-    			System.arraycopy(pageTable[currentIndex].cacheBlock, 0, buffer, 0, buffer.length);
-    			
-    			// verbose block for debugging
-    			if(verbose)
-    			{
-    				SysLib.cerr("From Cache.read(blockId == " + blockId + ", buffer) MATCH FOUND  after copyarray \n");
-    				for(int k = 0; k < maxIts; k++)
-    				{
-    					SysLib.cerr("k == " + k + ", pageTable[" + currentIndex + "].cacheBlock[k] == " 
-    							+ pageTable[currentIndex].cacheBlock[k] + ", buffer[k] == " + buffer[k]  +" \n");
-    				}	
-    			} // End of verbose block 
-    			
-    			// Since we just used this entry, we 
-    			// need to set its referenceBit
-    			this.pageTable[currentIndex].setRefBit();
-    			
-    			return true;
+    public boolean read(int blockId, byte buffer[]) {
+    	// Frames share one slab, so a longer buffer would
+    	// pick up the next frame's block
+    	if(buffer.length != frames.getBlockSize())
+    	{
+    		throw new IllegalArgumentException("Error in " 
+    			+ "Cache.read(int blockid, buffer[]). buffer length invalid");
+    	}
+    	long start = now();
+    	// Only possible if the policy doesn't need to see hits
+    	if(lockFreeHits && readOptimistic(blockId, 0, buffer))
+    	{
+    		if(timing)
+    		{
+    			stats.hitLatency(elapsed(start));
+    		}
+    		// A sequential reader hitting cached blocks must still
+    		// move its stream along, or read-ahead falls behind
+    		if(readAhead != null && readAhead.continuesStream(blockId))
+    		{
+    			streamHit(blockId);
     		}
-    		//this.incrClockPtr();
+    		return true;
+    	}
+    	return readLocked(blockId, buffer, start);
+    }
+    
+    // Tells read-ahead about a lock-free hit that continues a stream
+    private synchronized void streamHit(int blockId) {
+    	readAhead.onRead(blockId, blockIndex.get(blockId));
+    }
+    
+    // --------------------- readOptimistic( blockId, offset, buffer[] ) -------------------------
+    /*
+     *  Lock-free read of a cache hit, buffer.length bytes 
+     *  starting at offset within the block. The entry's version is 
+     *  checked before and after copying; if it was odd or 
+     *  changed, a writer got in the way and false is returned
+     *  so the caller retries under the lock. False is also 
+     *  returned on a miss. 
+     */
+    private boolean readOptimistic(int blockId, int offset, byte buffer[]) {
+    	// A pending writeAsync() may be for this block
+    	if(asyncWritesPending > 0)
+    	{
+    		return false;
+    	}
+    	// resize() may swap both tables at any time. A frame of a
+    	// retired table keeps an odd stamp, so it always fails below.
+    	FrameTable frames = this.frames;
+    	// Index may be mid-update, any answer is checked below
+    	int currentIndex = blockIndex.get(blockId);
+    	if(currentIndex < 0 || currentIndex >= frames.getFrameCount())
+    	{
+    		return false;
     	}
     	
-    	// At this point, blockId not found in
-    	// cache entry. Need to find a slot in 
-    	// the cache to place disk block and then 
-    	// write to it. 
-    	int cachePageToFill = this.findFreePage();
-    	boolean needVictim = false;
-    	if(cachePageToFill == -1)
+    	int stamp = frames.getVersion(currentIndex);
+    	if((stamp & 1) != 0 || frames.getBlock(currentIndex) != blockId)
+    	{
+    		return false;
+    	}
+    	// First read of a prefetched block grows its stream's 
+    	// window, which needs the lock. 
+    	if(readAhead != null && readAhead.isPrefetched(currentIndex))
     	{
-    		// Finding victim
-    		cachePageToFill = this.nextVictim();
-    		needVictim = true;
+    		return false;
     	}
+    	frames.readData(currentIndex, offset, buffer);
     	
-    	if(cachePageToFill == -1)
+    	// Copy must be finished before the stamp is checked again
+    	VarHandle.acquireFence();
+    	if(frames.getVersion(currentIndex) != stamp)
     	{
-    		SysLib.cerr("Error in Cache.read(int blkId, byte buffer[]). No victim found. \n");
     		return false;
     	}
     	
-    	// Need to write to disk if the entry has the 
-    	// dirty bit set. 
-    	if(needVictim && pageTable[cachePageToFill].getDirtyBit() == true)
+    	// Losing a race with the clock hand only
+    	// costs this block one second chance. 
+    	frames.setReferenced(currentIndex);
+    	stats.hit();
+    	// resize() may replace the filter at any time
+    	TinyLfuAdmission admission = this.admission;
+    	if(admission != null)
     	{
-    		// Write entry that will be replaced back 
-    		// to the disk 
-    		int blkFrNum = pageTable[cachePageToFill].getBFN();
-    		SysLib.rawwrite(blkFrNum, pageTable[cachePageToFill].cacheBlock);
-    		// Clearing dirty bit. 
-    		pageTable[cachePageToFill].clearDirtyBit();
+    		admission.record(blockId);
     	}
+    	return true;
+    }
+    
+    // --------------------- readLocked( blockId, buffer[], start ) -------------------------
+    /*
+     *  Locked version of read(), handles misses and any
+     *  hit the optimistic path could not validate. start
+     *  is when the read began, for the latency stats. 
+     */
+    private synchronized boolean readLocked(int blockId, byte buffer[], long start) {
+    	applyAsyncWrites(blockId);
     	
-    	// Reading from disk into cache slot
-    	boolean readSuccess = false;
-    	int bytesRead = SysLib.rawread(blockId, buffer);
-    	// rawread returns 0 upon success!!!!!!!!!!!
-    	if(bytesRead == 0)
+    	// Looking up the entry holding blockId, if any
+    	int currentIndex = blockIndex.get(blockId);
+    	if(currentIndex > -1)
     	{
-    		readSuccess = true;
+    		// Block found!!!
+    		// Copying data in cache block into buffer[]
+    		frames.readData(currentIndex, buffer);
+    		
+    		// verbose block for debugging
+    		if(verbose)
+    		{
+    			SysLib.cerr("From Cache.read(blockId == " + blockId + ", buffer) MATCH FOUND  after copyarray \n");
+    			for(int k = 0; k < maxIts; k++)
+    			{
+    				SysLib.cerr("k == " + k + ", frames.byteAt(" + currentIndex + ", k) == " 
+    						+ frames.byteAt(currentIndex, k) + ", buffer[k] == " + buffer[k]  +" \n");
+    			}	
+    		} // End of verbose block 
+    		
+    		// Since we just used this entry, we 
+    		// need to set its referenceBit
+    		hit(currentIndex, blockId);
+    		if(readAhead != null)
+    		{
+    			readAhead.onRead(blockId, currentIndex);
+    		}
+    		if(timing)
+    		{
+    			stats.hitLatency(elapsed(start));
+    		}
+    		
+    		return true;
+    	}
+    	
+    	// At this point, blockId not found in
+    	// cache entry. Need to find a slot in 
+    	// the cache to place disk block and then 
+    	// write to it. A dirty victim is written 
+    	// back to the disk by claimFrame(). 
+    	int cachePageToFill = this.claimFrame(blockId);
+    	if(cachePageToFill == -1)
+    	{
+    		SysLib.cerr("Error in Cache.read(int blkId, byte buffer[]). No victim found. \n");
+    		return false;
+    	}
+    	
+    	// Reading from disk into cache slot
+    	boolean readSuccess = false;
+    	int bytesRead = fetch(blockId, buffer);
+    	// rawread returns 0 upon success!!!!!!!!!!!
+    	if(bytesRead == 0)
+    	{
+    		readSuccess = true;
     		// Placing data into cache
-    		System.arraycopy(buffer, 0, pageTable[cachePageToFill].cacheBlock, 0, buffer.length);
+    		fill(cachePageToFill, blockId, buffer);
+    		if(readAhead != null)
+    		{
+    			readAhead.onRead(blockId, -1);
+    		}
+    		if(timing)
+    		{
+    			stats.missLatency(elapsed(start));
+    		}
     		
     		// verbose block for debugging!!
     		if(verbose)
@@ -489,14 +781,10 @@ public class Cache {
 				SysLib.cerr("From Cache.read(blockId == " + blockId + ", buffer) VICTIM FOUND  after copyarray \n");
 				for(int k = 0; k < maxIts; k++)
 				{
-					SysLib.cerr("k == " + k + ", pageTable[" + cachePageToFill + "].cacheBlock[k] == " 
-							+ pageTable[cachePageToFill].cacheBlock[k] + ", buffer[k] == " + buffer[k]  +" \n");
+					SysLib.cerr("k == " + k + ", frames.byteAt(" + cachePageToFill + ", k) == " 
+							+ frames.byteAt(cachePageToFill, k) + ", buffer[k] == " + buffer[k]  +" \n");
 				}
 			} // End of debugging verbose block
-    		
-    		// Setting reference bit
-    		pageTable[cachePageToFill].setRefBit();
-    		pageTable[cachePageToFill].clearDirtyBit();
     	}
     	// Else no bytes read!!
     	else
@@ -529,6 +817,12 @@ public class Cache {
      *  		DISK, ONLY CACHE.
      */
     public synchronized boolean write(int blockId, byte buffer[]) {
+    	// Older writeAsync() calls land first
+    	applyAsyncWrites(blockId);
+    	return writeLocked(blockId, buffer);
+    }
+    
+    private boolean writeLocked(int blockId, byte buffer[]) {
     	// Validating arguments
     	if(blockId < 0)
     	{
@@ -536,7 +830,7 @@ public class Cache {
     			+ "Cache.write(int blockid, buffer[]). blockId must be >= 0.");
     	}
     	
-    	if(buffer.length != pageTable[0].getBlockSize())
+    	if(buffer.length != frames.getBlockSize())
     	{
     		throw new IllegalArgumentException("Error in" 
         			+ "Cache.write(int blockid, buffer[]). buffer length invalid");
@@ -544,133 +838,67 @@ public class Cache {
 
     	// First need to find cache entry with a 
     	// blockFrameNumber == blockId
-    	int tableLength = this.getTableSize();
-    	int start = getClockPtr();			// Begin iterations here
-    	int end = start + tableLength;		// End iterations here
-    	int currentIndex = 0;				// Current entry to check
-    	int currBlkId = -1;
-    	for(int i = start; i < end; i++)
-    	{
-    		currentIndex = i % tableLength;
-    		// Retrieving current block frame number in entry
-    		currBlkId = pageTable[currentIndex].getBFN();
-    		if(currBlkId == blockId)
-    		{
-    			// Match found!
-    	    	// Write to cache entry, set ref and dirty bits.
-    			System.arraycopy(buffer, 0, pageTable[currentIndex].cacheBlock, 0, buffer.length);
+    	int currentIndex = blockIndex.get(blockId);
+    	if(currentIndex > -1)
+    	{
+    		// Match found!
+    		// Write to cache entry, set ref and dirty bits.
+    		writeFrame(currentIndex, 0, buffer);
+    		
+    		// verbose block for debugging!!
+    		if(verbose)
+    		{
+    			SysLib.cerr("Inside Cache.write() MATCH FOUND, blockId == " + blockId + " ... after arraycopy(buffer, cacheBlock) \n");
+    			SysLib.cerr("Writing to frame " + currentIndex + " \n");
+    			for(int k = 0; k < maxIts; k++)
+    			{
+    				SysLib.cerr("k == " + k + ", buffer[k] == " + buffer[k] 
+    						+ ", cacheBlock[k] == " + frames.byteAt(currentIndex, k) + "\n");
+    			}
     			
-    			// verbose block for debugging!!
-    			if(verbose)
+    			try									/// FOR DEBUGGING
     			{
-    				SysLib.cerr("Inside Cache.write() MATCH FOUND, blockId == " + blockId + " ... after arraycopy(buffer, cacheBlock) \n");
-    				SysLib.cerr("Writing to pageTable[" + currentIndex + "] \n");
-    				for(int k = 0; k < maxIts; k++)
-    				{
-    					SysLib.cerr("k == " + k + ", buffer[k] == " + buffer[k] 
-    							+ ", cacheBlock[k] == " + pageTable[currentIndex].cacheBlock[k] + "\n");
-    				}
-    				
-    	    		try									/// FOR DEBUGGING
-    				{
-    					Thread.sleep(2000);
-    				}
-    				catch(InterruptedException ex)
-    				{
-    					Thread.currentThread().interrupt();
-    				}									// DEBUG END
-    				
-    				
-    				
-
-    			} // End of debugging verbose block
+    				Thread.sleep(2000);
+    			}
+    			catch(InterruptedException ex)
+    			{
+    				Thread.currentThread().interrupt();
+    			}									// DEBUG END
+    			
     			
-    			// Updating bits
-    			pageTable[currentIndex].setRefBit();
-    			pageTable[currentIndex].setDirtyBit();
     			
-    			return true;
-    		}
-    		
-    	}
 
-    	// If no match is found, find an empty 
-    	// slot in cache to write to. 
-    	
-    	int emptySlot = this.findFreePage();
-    	if(emptySlot > -1)
-    	{
-    		
-    		// Empty slot found!
-    		// Write to slot, set ref
-    		pageTable[emptySlot].blockFrameNumber = blockId;
-    		System.arraycopy(buffer, 0, pageTable[emptySlot].cacheBlock, 0, buffer.length);
+    		} // End of debugging verbose block
     		
-    		// verbose block for debugging
-    		if(verbose)
-			{
-				SysLib.cerr("Inside Cache.write() EMPTY SLOT, blockId == " + blockId + " after arraycopy(buffer, cacheBlock) \n");
-				SysLib.cerr("Writing to pageTable[" + emptySlot + "] \n");
-				for(int k = 0; k < maxIts; k++)
-				{
-					SysLib.cerr("k == " + k + ", buffer[k] == " + buffer[k] 
-							+ ", cacheBlock[k] == " + pageTable[emptySlot].cacheBlock[k] + "\n");
-				}
-				try									/// FOR DEBUGGING
-				{
-					Thread.sleep(2000);
-				}
-				catch(InterruptedException ex)
-				{
-					Thread.currentThread().interrupt();
-				}									// DEBUG END
-			} // End of debugging verbose block 
-
     		// Updating bits
-    		pageTable[emptySlot].setRefBit();
-    		pageTable[emptySlot].setDirtyBit();
+    		hit(currentIndex, blockId);
+    		markDirty(currentIndex);
+    		
     		return true;
     	}
-    	
-    	// At this point, there's no empty slots in 
-    	// cache, need to find victim
-    	int victim = this.nextVictim();
+
+    	// If no match is found, find an empty 
+    	// slot in cache to write to, or a victim
+    	// when there's no empty slots in cache.
+    	int victim = this.claimFrame(blockId);
     	if(victim == -1)
     	{
     		SysLib.cerr("Error in Cache.write(blockId, buffer). No victim found. \n");
-    		try
-			{
-				Thread.sleep(1000);
-			}
-			catch(InterruptedException ex)
-			{
-				Thread.currentThread().interrupt();
-			}
     		return false;
     	}
     	
-    	// Victim found!
-    	// Need to check victim's dirty bit and 
-    	// write to disk if needed. 
-    	if(pageTable[victim].getDirtyBit() == true)
-    	{
-    		int victimBlockFrameNum = pageTable[victim].getBFN();
-    		SysLib.rawwrite(victimBlockFrameNum, pageTable[victim].cacheBlock);
-    	}
-    	
     	// Finally writing to the cache!
-    	pageTable[victim].blockFrameNumber = blockId;
-    	System.arraycopy(buffer, 0, pageTable[victim].cacheBlock, 0, buffer.length);
+    	fill(victim, blockId, buffer);
     	
     	// verbose block for debugging
     	if(verbose)
 		{
 			SysLib.cerr("Inside Cache.write() VICTIM FOUND, blockId == " + blockId + " after arraycopy(buffer, cacheBlock) \n");
-			SysLib.cerr("Writing to pageTable[" + victim + "] \n");
+			SysLib.cerr("Writing to frame " + victim + " \n");
 			for(int k = 0; k < maxIts; k++)
 			{
 				SysLib.cerr("k == " + k + ", buffer[k] == " + buffer[k] 
-						+ ", cacheBlock[k] == " + pageTable[victim].cacheBlock[k] + "\n");
+						+ ", cacheBlock[k] == " + frames.byteAt(victim, k) + "\n");
 			}
 			try									/// FOR DEBUGGING
 			{
@@ -682,37 +910,854 @@ public class Cache {
 			}									// DEBUG END
 		} // End of debugging verbose block
     	
-    	// Setting reference bit
-    	pageTable[victim].setRefBit();
     	// This could have different data than 
     	// what is stored on the disk, so setting
-    	// dirty bit
-		pageTable[victim].setDirtyBit();
+    	// dirty bit (fill() set the reference bit)
+		markDirty(victim);
 
     	// End of method
         return true;
     }
 
+    // --------------------- readv( blockIds[], buffers[][] ) -------------------------
+    /*
+     *  Vectored read: copies block blockIds[i] into buffers[i]
+     *  for every i while holding the lock once. Hits are served
+     *  first, then the misses go to the disk in ascending block
+     *  order, up to READ_BATCH of them per RAWREADV, so a striped
+     *  or mirrored disk works on a whole batch at once. Returns 
+     *  false if any block could not be read. 
+     */
+    public synchronized boolean readv(int blockIds[], byte buffers[][]) {
+    	checkVector("readv", blockIds, buffers);
+    	for(int i = 0; i < blockIds.length; i++)
+    	{
+    		applyAsyncWrites(blockIds[i]);
+    	}
+    	
+    	int missing = 0;
+    	long misses[] = new long[blockIds.length];
+    	for(int i = 0; i < blockIds.length; i++)
+    	{
+    		int frame = blockIndex.get(blockIds[i]);
+    		if(frame > -1)
+    		{
+    			frames.readData(frame, buffers[i]);
+    			hit(frame, blockIds[i]);
+    		}
+    		else
+    		{
+    			// (block number << 32 | i) sorts by block number
+    			misses[missing++] = ((long)blockIds[i] << 32) | i;
+    		}
+    	}
+    	Arrays.sort(misses, 0, missing);
+    	
+    	boolean readSuccess = true;
+    	int batch = Math.min(READ_BATCH, getTableSize());
+    	int m = 0;
+    	while(m < missing)
+    	{
+    		// Next batch of distinct missing blocks. A block asked
+    		// for twice sorts next to itself and is copied below. 
+    		int slots[] = new int[batch];		// Index into blockIds[]
+    		boolean loaded[] = new boolean[batch];
+    		int n = 0;
+    		for(; m < missing && n < batch; m++)
+    		{
+    			int i = (int)misses[m];
+    			if(m > 0 && blockIds[(int)misses[m - 1]] == blockIds[i])
+    			{
+    				continue;
+    			}
+    			slots[n++] = i;
+    		}
+    		
+    		// Tier copies first, the rest in one disk request
+    		int diskIds[] = new int[n];
+    		byte diskBuffers[][] = new byte[n][];
+    		int onDisk = 0;
+    		for(int k = 0; k < n; k++)
+    		{
+    			int i = slots[k];
+    			loaded[k] = (tier != null && tier.take(blockIds[i], buffers[i]));
+    			if(!loaded[k])
+    			{
+    				diskIds[onDisk] = blockIds[i];
+    				diskBuffers[onDisk] = buffers[i];
+    				onDisk++;
+    			}
+    		}
+    		boolean batchRead = (onDisk == 0) 
+    				|| rawreadv(Arrays.copyOf(diskIds, onDisk), Arrays.copyOf(diskBuffers, onDisk)) == 0;
+    		
+    		for(int k = 0; k < n; k++)
+    		{
+    			int i = slots[k];
+    			// A failed batch doesn't say which block failed
+    			if(!loaded[k])
+    			{
+    				loaded[k] = batchRead || SysLib.rawread(blockIds[i], buffers[i]) == 0;
+    			}
+    			noteDiskCopy(blockIds[i], buffers[i], loaded[k]);
+    			if(!loaded[k])
+    			{
+    				readSuccess = false;
+    				continue;
+    			}
+    			int frame = this.claimFrame(blockIds[i]);
+    			if(frame == -1)
+    			{
+    				SysLib.cerr("Error in Cache.readv(blockIds, buffers). No victim found. \n");
+    				return false;
+    			}
+    			fill(frame, blockIds[i], buffers[i]);
+    		}
+    	}
+    	
+    	// Blocks asked for more than once get the first copy
+    	for(m = 1; m < missing; m++)
+    	{
+    		int i = (int)misses[m];
+    		int first = (int)misses[m - 1];
+    		if(blockIds[first] == blockIds[i])
+    		{
+    			System.arraycopy(buffers[first], 0, buffers[i], 0, buffers[i].length);
+    		}
+    	}
+    	return readSuccess;
+    }
+    
+    // --------------------- writev( blockIds[], buffers[][] ) -------------------------
+    /*
+     *  Vectored write: copies buffers[i] into the cached copy of
+     *  blockIds[i] for every i while holding the lock once. 
+     *  Misses claim their frames in ascending block order, so 
+     *  dirty victims go back to the disk in one sweep. When a 
+     *  block appears more than once, the last buffer wins. 
+     */
+    public synchronized boolean writev(int blockIds[], byte buffers[][]) {
+    	checkVector("writev", blockIds, buffers);
+    	for(int i = 0; i < blockIds.length; i++)
+    	{
+    		applyAsyncWrites(blockIds[i]);
+    	}
+    	
+    	int missing = 0;
+    	long misses[] = new long[blockIds.length];
+    	for(int i = 0; i < blockIds.length; i++)
+    	{
+    		int frame = blockIndex.get(blockIds[i]);
+    		if(frame > -1)
+    		{
+    			writeFrame(frame, 0, buffers[i]);
+    			hit(frame, blockIds[i]);
+    			markDirty(frame);
+    		}
+    		else
+    		{
+    			// Equal blocks keep their order, so the last one wins
+    			misses[missing++] = ((long)blockIds[i] << 32) | i;
+    		}
+    	}
+    	Arrays.sort(misses, 0, missing);
+    	
+    	for(int m = 0; m < missing; m++)
+    	{
+    		int i = (int)misses[m];
+    		int frame = blockIndex.get(blockIds[i]);
+    		if(frame > -1)
+    		{
+    			writeFrame(frame, 0, buffers[i]);
+    			hit(frame, blockIds[i]);
+    		}
+    		else
+    		{
+    			frame = this.claimFrame(blockIds[i]);
+    			if(frame == -1)
+    			{
+    				SysLib.cerr("Error in Cache.writev(blockIds, buffers). No victim found. \n");
+    				return false;
+    			}
+    			fill(frame, blockIds[i], buffers[i]);
+    		}
+    		markDirty(frame);
+    	}
+    	return true;
+    }
+    
+    // ------------------------- writeFrame( frame, offset, src[] ) -------------------------
+    /*
+     *  Copies src[] into frame at offset. The version stamp 
+     *  is bumped around the copy unless a write pin already 
+     *  holds it odd. 
+     */
+    private void writeFrame(int frame, int offset, byte src[]) {
+    	boolean stamp = (writePins[frame] == 0);
+    	if(stamp)
+    	{
+    		frames.beginUpdate(frame);
+    	}
+    	frames.writeData(frame, offset, src);
+    	if(stamp)
+    	{
+    		frames.endUpdate(frame);
+    	}
+    }
+    
+    // Validates the arguments of readv() and writev()
+    private void checkVector(String method, int blockIds[], byte buffers[][]) {
+    	if(blockIds.length != buffers.length)
+    	{
+    		throw new IllegalArgumentException("Error in Cache." + method 
+    				+ "(blockIds[], buffers[][]). Arrays differ in length.");
+    	}
+    	for(int i = 0; i < blockIds.length; i++)
+    	{
+    		if(blockIds[i] < 0)
+    		{
+    			throw new IllegalArgumentException("Error in Cache." + method 
+    					+ "(blockIds[], buffers[][]). blockId must be >= 0.");
+    		}
+    		if(buffers[i].length != frames.getBlockSize())
+    		{
+    			throw new IllegalArgumentException("Error in Cache." + method 
+    					+ "(blockIds[], buffers[][]). buffer length invalid");
+    		}
+    	}
+    }
+
+    // --------------------- readPartial( blockId, offset, buffer[] ) -------------------------
+    /*
+     *  Copies buffer.length bytes starting at offset within
+     *  block blockId into buffer[]. Only that range is copied
+     *  out of the frame; a miss still caches the whole block. 
+     */
+    public boolean readPartial(int blockId, int offset, byte buffer[]) {
+    	checkRange("readPartial", blockId, offset, buffer);
+    	if(lockFreeHits && readOptimistic(blockId, offset, buffer))
+    	{
+    		return true;
+    	}
+    	return readPartialLocked(blockId, offset, buffer);
+    }
+    
+    private synchronized boolean readPartialLocked(int blockId, int offset, byte buffer[]) {
+    	applyAsyncWrites(blockId);
+    	int frame = blockIndex.get(blockId);
+    	if(frame > -1)
+    	{
+    		frames.readData(frame, offset, buffer);
+    		hit(frame, blockId);
+    		if(readAhead != null)
+    		{
+    			readAhead.onRead(blockId, frame);
+    		}
+    		return true;
+    	}
+    	frame = loadBlock(blockId, "readPartial");
+    	if(frame == -1)
+    	{
+    		return false;
+    	}
+    	frames.readData(frame, offset, buffer);
+    	if(readAhead != null)
+    	{
+    		readAhead.onRead(blockId, -1);
+    	}
+    	return true;
+    }
+    
+    // --------------------- writePartial( blockId, offset, buffer[] ) -------------------------
+    /*
+     *  Copies buffer[] over the bytes starting at offset within
+     *  the cached copy of blockId and marks it dirty, so a small
+     *  record update doesn't move a whole block through the 
+     *  caller. A miss reads the rest of the block from disk first. 
+     */
+    public synchronized boolean writePartial(int blockId, int offset, byte buffer[]) {
+    	checkRange("writePartial", blockId, offset, buffer);
+    	applyAsyncWrites(blockId);
+    	int frame = blockIndex.get(blockId);
+    	if(frame > -1)
+    	{
+    		hit(frame, blockId);
+    	}
+    	else
+    	{
+    		frame = loadBlock(blockId, "writePartial");
+    		if(frame == -1)
+    		{
+    			return false;
+    		}
+    	}
+    	writeFrame(frame, offset, buffer);
+    	markDirty(frame);
+    	return true;
+    }
+    
+    /*
+     *  Reads missing blockId from disk into a claimed frame. 
+     *  Returns the frame, or -1 if nothing could be evicted
+     *  or the disk read failed. 
+     */
+    private int loadBlock(int blockId, String method) {
+    	int frame = this.claimFrame(blockId);
+    	if(frame == -1)
+    	{
+    		SysLib.cerr("Error in Cache." + method + "(). No victim found. \n");
+    		return -1;
+    	}
+    	// Any victim write-back is done, so scratch is free.
+    	// fetch returns 0 upon success
+    	if(fetch(blockId, scratch) != 0)
+    	{
+    		return -1;
+    	}
+    	fill(frame, blockId, scratch);
+    	return frame;
+    }
+    
+    // Validates the arguments of readPartial() and writePartial()
+    private void checkRange(String method, int blockId, int offset, byte buffer[]) {
+    	if(blockId < 0)
+    	{
+    		throw new IllegalArgumentException("Error in Cache." + method 
+    				+ "(blockId, offset, buffer[]). blockId must be >= 0.");
+    	}
+    	if(offset < 0 || offset + buffer.length > frames.getBlockSize())
+    	{
+    		throw new IllegalArgumentException("Error in Cache." + method 
+    				+ "(blockId, offset, buffer[]). range outside the block");
+    	}
+    }
+
+    // --------------------- pin( blockId, write ) -------------------------
+    /*
+     *  Returns a ByteBuffer sharing the bytes of the frame that
+     *  holds blockId, reading the block in on a miss, so it can
+     *  be scanned without any copy. Read-only unless write is 
+     *  set. The frame cannot be evicted until every pin is 
+     *  released with unpin(blockId, write). Returns null if 
+     *  the block could not be loaded. 
+     *  
+     *  A write pin keeps the frame's version odd, so lock-free 
+     *  readers go through the lock while it is held, and the 
+     *  block is marked dirty when it is unpinned. 
+     */
+    public synchronized ByteBuffer pin(int blockId, boolean write) {
+    	if(blockId < 0)
+    	{
+    		throw new IllegalArgumentException("Error in Cache.pin(blockId, write). blockId must be >= 0.");
+    	}
+    	applyAsyncWrites(blockId);
+    	int frame = blockIndex.get(blockId);
+    	if(frame > -1)
+    	{
+    		hit(frame, blockId);
+    	}
+    	else
+    	{
+    		frame = loadBlock(blockId, "pin");
+    		if(frame == -1)
+    		{
+    			return null;
+    		}
+    	}
+    	
+    	if(pins[frame] == 0)
+    	{
+    		// Out of the policy and skipped by clock scans
+    		leavePolicy(frame, blockId);
+    		frames.hold(frame);
+    	}
+    	pins[frame]++;
+    	if(write)
+    	{
+    		if(writePins[frame] == 0)
+    		{
+    			frames.beginUpdate(frame);
+    		}
+    		writePins[frame]++;
+    		return frames.view(frame);
+    	}
+    	return frames.view(frame).asReadOnlyBuffer();
+    }
+    
+    // --------------------- unpin( blockId, write ) -------------------------
+    /*
+     *  Releases one pin(blockId, write). The view must not
+     *  be used afterwards. 
+     */
+    public synchronized void unpin(int blockId, boolean write) {
+    	int frame = blockIndex.get(blockId);
+    	if(frame == -1 || pins[frame] == 0 || (write && writePins[frame] == 0))
+    	{
+    		throw new IllegalArgumentException("Error in Cache.unpin(blockId, write). Block is not pinned.");
+    	}
+    	if(write)
+    	{
+    		writePins[frame]--;
+    		if(writePins[frame] == 0)
+    		{
+    			frames.endUpdate(frame);
+    		}
+    		// Marked now, so a write-back during the pin can't
+    		// leave the final contents clean
+    		markDirty(frame);
+    	}
+    	pins[frame]--;
+    	if(pins[frame] == 0)
+    	{
+    		frames.release(frame);
+    		enterPolicy(frame, blockId);
+    	}
+    }
+
+    // --------------------- isPinned() -------------------------
+    /*
+     *  True if any frame is pinned, which makes resize() fail. 
+     */
+    public synchronized boolean isPinned() {
+    	for(int i = 0; i < pins.length; i++)
+    	{
+    		if(pins[i] > 0)
+    		{
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    // --------------------- resize( cacheBlocks ) -------------------------
+    /*
+     *  Changes the number of frames without losing cached 
+     *  blocks. When shrinking, the policy's victims are evicted 
+     *  (dirty ones written back) until the rest fits. Every 
+     *  remaining block, dirty or not, is then moved into a new 
+     *  frame table. Returns false while any block is pinned, 
+     *  since its views point into the old table, or if a block 
+     *  that doesn't fit can't be written back. 
+     *  
+     *  Replacement history and admission counts start over. 
+     *  
+     *  NOTE:	The new table is filled while the old one is still
+     *  		in use, so a shrink briefly needs both: old plus new
+     *  		frames' worth of block data. 
+     */
+    public synchronized boolean resize(int cacheBlocks) {
+    	if(cacheBlocks < 1)
+    	{
+    		throw new IllegalArgumentException("Error in Cache.resize(int cacheBlocks): " 
+    				+ "cacheBlocks must be > 0");
+    	}
+    	if(cacheBlocks == getTableSize())
+    	{
+    		return true;
+    	}
+    	if(isPinned())
+    	{
+    		SysLib.cerr("Error in Cache.resize(cacheBlocks). Blocks are pinned. \n");
+    		return false;
+    	}
+    	
+    	// Shrinking: the policy picks who has to go
+    	while(blockIndex.size() > cacheBlocks)
+    	{
+    		int victim = this.nextVictim(-1);
+    		if(victim == -1 && admission != null)
+    		{
+    			victim = admission.windowCandidate();
+    		}
+    		if(victim == -1)
+    		{
+    			break;
+    		}
+    		evict(victim);
+    	}
+    	
+    	// If the policy ran out of victims, the copy below leaves
+    	// every block past the first cacheBlocks behind. Those
+    	// must be clean first, or their writes would be lost. 
+    	if(blockIndex.size() > cacheBlocks && !writeBackOverflow(cacheBlocks))
+    	{
+    		SysLib.cerr("Error in Cache.resize(cacheBlocks). Write-back failed. \n");
+    		return false;
+    	}
+    	
+    	FrameTable old = frames;
+    	FrameTable table = new FrameTable(old.getBlockSize(), cacheBlocks, options.offHeap);
+    	BlockIndex index = new BlockIndex(cacheBlocks);
+    	int next = 0;
+    	for(int i = 0; i < old.getFrameCount() && next < cacheBlocks; i++)
+    	{
+    		int blockId = old.getBlock(i);
+    		if(blockId == -1)
+    		{
+    			continue;
+    		}
+    		old.readData(i, scratch);
+    		table.setBlock(next, blockId);
+    		table.writeData(next, scratch);
+    		if(old.isReferenced(i))
+    		{
+    			table.setReferenced(next);
+    		}
+    		if(old.isDirty(i))
+    		{
+    			table.setDirty(next);
+    		}
+    		index.put(blockId, next);
+    		next++;
+    	}
+    	
+    	// Lock-free readers still in the old table must fail
+    	// their stamp check from now on
+    	for(int i = 0; i < old.getFrameCount(); i++)
+    	{
+    		old.beginUpdate(i);
+    	}
+    	frames = table;
+    	blockIndex = index;
+    	
+    	policy = options.createPolicy(table);
+    	// Published in one store, never null in between
+    	TinyLfuAdmission filter = null;
+    	if(options.admission && cacheBlocks > 1)
+    	{
+    		filter = new TinyLfuAdmission(table, options);
+    	}
+    	admission = filter;
+    	for(int i = 0; i < next; i++)
+    	{
+    		enterPolicy(i, table.getBlock(i));
+    	}
+    	pins = new int[cacheBlocks];
+    	writePins = new int[cacheBlocks];
+    	flushCursor = 0;
+    	if(readAhead != null)
+    	{
+    		readAhead.resize(cacheBlocks);
+    	}
+    	if(flusher != null)
+    	{
+    		flusher.resize(cacheBlocks);
+    	}
+    	if(tier != null)
+    	{
+    		tier.setCapacity(tierCapacity(table.getBlockSize(), cacheBlocks));
+    	}
+    	return true;
+    }
+    
+    /*
+     *  Writes back every dirty block after the first kept valid 
+     *  frames, in frame order. Returns false, with nothing else 
+     *  changed, if the disk refuses one of them. 
+     */
+    private boolean writeBackOverflow(int kept) {
+    	int seen = 0;
+    	for(int i = 0; i < getTableSize(); i++)
+    	{
+    		if(frames.getBlock(i) == -1)
+    		{
+    			continue;
+    		}
+    		seen++;
+    		if(seen > kept && frames.isDirty(i))
+    		{
+    			frames.readData(i, scratch);
+    			if(skipsWriteBack(frames.getBlock(i), scratch))
+    			{
+    				stats.zeroWriteBack(1);
+    				frames.clearDirty(i);
+    				continue;
+    			}
+    			// rawwrite returns 0 upon success
+    			boolean written = (SysLib.rawwrite(frames.getBlock(i), scratch) == 0);
+    			noteDiskCopy(frames.getBlock(i), scratch, written);
+    			if(!written)
+    			{
+    				return false;
+    			}
+    			stats.writeBack(1, 0);
+    			frames.clearDirty(i);
+    		}
+    	}
+    	return true;
+    }
+    
+    // Tier budget: a percentage of the bytes held by the frames
+    private long tierCapacity(int blkSize, int cacheBlocks) {
+    	return (long)blkSize * cacheBlocks * options.compressedTierPercent / 100;
+    }
+
+    // --------------------- snapshot() -------------------------
+    /*
+     *  Returns (blockId << 1 | reference bit) for every cached 
+     *  block, for CacheSnapshot. 
+     */
+    public synchronized long[] snapshot() {
+    	long entries[] = new long[blockIndex.size()];
+    	int count = 0;
+    	for(int i = 0; i < getTableSize() && count < entries.length; i++)
+    	{
+    		int blockId = frames.getBlock(i);
+    		if(blockId != -1)
+    		{
+    			entries[count++] = ((long)blockId << 1) | (frames.isReferenced(i) ? 1 : 0);
+    		}
+    	}
+    	return entries;
+    }
+    
+    // --------------------- warm( entries[] ) -------------------------
+    /*
+     *  Reads the blocks of a snapshot() back in with ascending, 
+     *  batched readv() calls. If they don't all fit, referenced 
+     *  blocks are preferred. Blocks that were unreferenced get 
+     *  their reference bit cleared again afterwards. 
+     */
+    public void warm(long entries[]) {
+    	int capacity = getTableSize();
+    	long chosen[] = entries;
+    	if(entries.length > capacity)
+    	{
+    		chosen = new long[capacity];
+    		int count = 0;
+    		for(int pass = 1; pass >= 0; pass--)
+    		{
+    			for(int i = 0; i < entries.length && count < capacity; i++)
+    			{
+    				if((entries[i] & 1) == pass)
+    				{
+    					chosen[count++] = entries[i];
+    				}
+    			}
+    		}
+    	}
+    	chosen = chosen.clone();
+    	Arrays.sort(chosen);
+    	
+    	// Batches keep the staging buffers small
+    	byte buffers[][] = new byte[Math.min(READ_BATCH, chosen.length)][frames.getBlockSize()];
+    	for(int first = 0; first < chosen.length; first += READ_BATCH)
+    	{
+    		int n = Math.min(READ_BATCH, chosen.length - first);
+    		int blockIds[] = new int[n];
+    		byte batchBuffers[][] = (n == buffers.length) ? buffers : Arrays.copyOf(buffers, n);
+    		for(int i = 0; i < n; i++)
+    		{
+    			blockIds[i] = (int)(chosen[first + i] >>> 1);
+    		}
+    		readv(blockIds, batchBuffers);
+    	}
+    	
+    	synchronized(this)
+    	{
+    		for(int i = 0; i < chosen.length; i++)
+    		{
+    			int frame = blockIndex.get((int)(chosen[i] >>> 1));
+    			if((chosen[i] & 1) == 0 && frame > -1)
+    			{
+    				frames.clearReferenced(frame);
+    			}
+    		}
+    	}
+    }
+
+    // --------------------- readAsync( blockId, buffer[] ) -------------------------
+    /*
+     *  Asynchronous read(). A hit the lock-free path can serve
+     *  is copied into buffer[] before this returns and the 
+     *  future is already complete. Anything else is handed to 
+     *  one of asyncThreads worker threads, which reads a miss 
+     *  from disk without holding the cache lock, so many misses
+     *  are on the disk at once. The future completes (true on 
+     *  success) once buffer[] is filled; it must not be used 
+     *  until then. 
+     */
+    public CompletableFuture<Boolean> readAsync(int blockId, byte buffer[]) {
+    	if(buffer.length != frames.getBlockSize())
+    	{
+    		throw new IllegalArgumentException("Error in " 
+    			+ "Cache.readAsync(int blockid, buffer[]). buffer length invalid");
+    	}
+    	if(lockFreeHits && readOptimistic(blockId, 0, buffer))
+    	{
+    		return CompletableFuture.completedFuture(true);
+    	}
+    	long start = now();
+    	return CompletableFuture.supplyAsync(() -> readUnlocked(blockId, buffer, start), getAsyncWorker());
+    }
+    
+    // --------------------- readUnlocked( blockId, buffer[], start ) -------------------------
+    /*
+     *  Miss path of readAsync(). The disk read runs outside 
+     *  the lock; the block is placed in a frame afterwards 
+     *  unless it was cached meanwhile. If the block was filled 
+     *  (and so maybe written back) while the disk read was in 
+     *  flight, the read may be stale and is redone under the lock. 
+     */
+    private boolean readUnlocked(int blockId, byte buffer[], long start) {
+    	synchronized(this)
+    	{
+    		applyAsyncWrites(blockId);
+    		if(blockIndex.get(blockId) > -1 || (tier != null && tier.contains(blockId)))
+    		{
+    			return readLocked(blockId, buffer, start);
+    		}
+    		int fetch[] = asyncFetches.get(blockId);
+    		if(fetch == null)
+    		{
+    			fetch = new int[2];
+    			asyncFetches.put(blockId, fetch);
+    		}
+    		fetch[0]++;
+    	}
+    	
+    	boolean loaded = (SysLib.rawread(blockId, buffer) == 0);
+    	
+    	synchronized(this)
+    	{
+    		int fetch[] = asyncFetches.get(blockId);
+    		boolean stale = (fetch[1] != 0);
+    		if(--fetch[0] == 0)
+    		{
+    			asyncFetches.remove(blockId);
+    		}
+    		if(!loaded || stale || blockIndex.get(blockId) > -1)
+    		{
+    			return readLocked(blockId, buffer, start);
+    		}
+    		// Not noted as a disk copy: a raw write may have 
+    		// landed since the read, while the lock was free
+    		int frame = this.claimFrame(blockId);
+    		if(frame == -1)
+    		{
+    			SysLib.cerr("Error in Cache.readAsync(int blkId, byte buffer[]). No victim found. \n");
+    			return false;
+    		}
+    		fill(frame, blockId, buffer);
+    		if(readAhead != null)
+    		{
+    			readAhead.onRead(blockId, -1);
+    		}
+    		if(timing)
+    		{
+    			stats.missLatency(elapsed(start));
+    		}
+    		return true;
+    	}
+    }
+    
+    // --------------------- writeAsync( blockId, buffer[] ) -------------------------
+    /*
+     *  Asynchronous write(). The write is queued for its block
+     *  and applied by a worker thread, which also pays for 
+     *  writing back a dirty victim. Any locked access to the 
+     *  block before then (read, write, pin, sync, ...) applies
+     *  it first, so the block always sees writes in the order 
+     *  they were issued. The future completes once buffer[] is
+     *  cached; buffer[] must not change until then. 
+     */
+    public CompletableFuture<Boolean> writeAsync(int blockId, byte buffer[]) {
+    	if(blockId < 0 || buffer.length != frames.getBlockSize())
+    	{
+    		throw new IllegalArgumentException("Error in " 
+    			+ "Cache.writeAsync(int blockid, buffer[]). blockId or buffer length invalid");
+    	}
+    	AsyncWrite pending = new AsyncWrite(buffer);
+    	synchronized(this)
+    	{
+    		ArrayDeque<AsyncWrite> queue = asyncWrites.get(blockId);
+    		if(queue == null)
+    		{
+    			queue = new ArrayDeque<AsyncWrite>();
+    			asyncWrites.put(blockId, queue);
+    		}
+    		queue.addLast(pending);
+    		asyncWritesPending++;
+    	}
+    	return CompletableFuture.supplyAsync(() -> finishAsyncWrite(blockId, pending), getAsyncWorker());
+    }
+    
+    // Worker side of writeAsync(); pending may be applied already
+    private synchronized boolean finishAsyncWrite(int blockId, AsyncWrite pending) {
+    	applyAsyncWrites(blockId);
+    	return pending.result;
+    }
+    
+    // ------------------------- applyAsyncWrites( blockId ) -------------------------
+    /*
+     *  Applies every pending writeAsync() of blockId, oldest 
+     *  first. Caller holds the lock. 
+     */
+    private void applyAsyncWrites(int blockId) {
+    	if(asyncWritesPending == 0)
+    	{
+    		return;
+    	}
+    	ArrayDeque<AsyncWrite> queue = asyncWrites.remove(blockId);
+    	if(queue == null)
+    	{
+    		return;
+    	}
+    	for(AsyncWrite pending : queue)
+    	{
+    		pending.result = writeLocked(blockId, pending.buffer);
+    	}
+    	asyncWritesPending -= queue.size();
+    }
+    
+    // asyncThreads daemon threads per cache
+    private synchronized ExecutorService getAsyncWorker() {
+    	if(asyncWorker == null)
+    	{
+    		asyncWorker = Executors.newFixedThreadPool(Math.max(1, options.asyncThreads), task -> {
+    			Thread worker = new Thread(task, "CacheAsync");
+    			worker.setDaemon(true);
+    			return worker;
+    		});
+    	}
+    	return asyncWorker;
+    }
+
     // ------------------- sync() -----------------------
     
     /*
      *  sync() writes back all dirby blocks 
      *  to Disk. Keeps clean cache entries
      *  in cache (dirtyBit = false)
+     *  
+     *  Only the dirty frames are visited, and they are
+     *  written in ascending block order (one elevator sweep),
+     *  in batches, so runs of contiguous blocks go out back 
+     *  to back and a striped disk writes on every member. 
      */
     public synchronized void sync() 
     {
-    	int currentBFN = -1; // Current block frame number
-    	for(int i = 0; i < this.getTableSize(); i++)
+    	stats.sync();
+    	while(!asyncWrites.isEmpty())
     	{
-    		// Checking each entry for a set dirty bit
-    		if(this.pageTable[i].getDirtyBit() == true)
-    		{
-    			currentBFN = this.pageTable[i].getBFN();
-    			SysLib.rawwrite(currentBFN, this.pageTable[i].cacheBlock);
-    			this.pageTable[i].clearDirtyBit();
-    		}
+    		applyAsyncWrites(asyncWrites.keySet().iterator().next());
+    	}
+    	// (block number << 32 | frame) sorts by block number
+    	int dirty = frames.getDirtyCount();
+    	long order[] = new long[dirty];
+    	for(int i = 0; i < dirty; i++)
+    	{
+    		int frame = frames.getDirtyFrame(i);
+    		order[i] = ((long)frames.getBlock(frame) << 32) | frame;
+    	}
+    	Arrays.sort(order);
+    	
+    	int list[] = new int[dirty];
+    	for(int i = 0; i < dirty; i++)
+    	{
+    		list[i] = (int)order[i];
     	}
+    	writeBackFrames(list, dirty);
     }
 
     // ------------------- flush() -------------------------
@@ -726,19 +1771,222 @@ public class Cache {
     	{
     		for(int i = 0; i < this.getTableSize(); i++)
     		{
-    			pageTable[i].invalidate();
+    			// Pinned frames stay until they are unpinned
+    			if(frames.getBlock(i) != -1 && pins[i] == 0)
+    			{
+    				leavePolicy(i, frames.getBlock(i));
+    				if(readAhead != null)
+    				{
+    					readAhead.onInvalidate(i);
+    				}
+    				blockIndex.remove(frames.getBlock(i));
+    				frames.invalidate(i);
+    			}
     		}
     	}
     	catch (NullPointerException e)
     	{
     		SysLib.cerr("Error in flush(). page table contains null element. \n");
     	}
-	
+    	if(tier != null)
+    	{
+    		tier.clear();
+    	}
+    	// Whatever the disk holds now is no longer known
+    	zeroOnDisk.clear();
+    }
+    
+    // --------------------- rawWritten( blockId ) ----------------------
+    /*
+     *  Called by Kernel after any RAWWRITE or RAWWRITEV of 
+     *  blockId. The disk copy may no longer be zero, so the 
+     *  next write-back of the block can't be skipped. This 
+     *  cache's own write-backs come through here as well, 
+     *  before they note what they wrote, so that note stands. 
+     */
+    public synchronized void rawWritten(int blockId) {
+    	zeroOnDisk.clear(blockId);
+    }
+    
+    // --------------------- markDirty( frame ) ----------------------
+    /*
+     *  Sets the frame's dirty bit and wakes up the 
+     *  flusher once the high watermark is reached. 
+     */
+    private void markDirty(int frame)
+    {
+    	frames.setDirty(frame);
+    	if(flusher != null && frames.getDirtyCount() >= flusher.getHighWatermark())
+    	{
+    		flusher.wakeup();
+    	}
+    }
+    
+    // ------------------- writeBackNext( cutoff ) ----------------------
+    /*
+     *  Writes back one dirty frame that became dirty at or 
+     *  before cutoff (milliseconds), continuing round-robin
+     *  from the last one written. Used by CacheFlusher, 
+     *  which calls it once per block so the lock is never 
+     *  held for more than one disk write. Returns false if
+     *  no such frame exists. 
+     */
+    public synchronized boolean writeBackNext(long cutoff)
+    {
+    	int start = (flushCursor < getTableSize()) ? flushCursor : 0;
+    	int found = -1;
+    	// From the cursor to the end, then wrapping around
+    	for(int i = frames.nextDirty(start); i > -1 && found == -1; i = frames.nextDirty(i + 1))
+    	{
+    		if(frames.getDirtySince(i) <= cutoff)
+    		{
+    			found = i;
+    		}
+    	}
+    	for(int i = frames.nextDirty(0); i > -1 && i < start && found == -1; i = frames.nextDirty(i + 1))
+    	{
+    		if(frames.getDirtySince(i) <= cutoff)
+    		{
+    			found = i;
+    		}
+    	}
+    	if(found == -1)
+    	{
+    		return false;
+    	}
+    	
+    	frames.readData(found, scratch);
+    	if(skipsWriteBack(frames.getBlock(found), scratch))
+    	{
+    		stats.zeroWriteBack(1);
+    	}
+    	else
+    	{
+    		long started = now();
+    		int result = SysLib.rawwrite(frames.getBlock(found), scratch);
+    		noteDiskCopy(frames.getBlock(found), scratch, result == 0);
+    		stats.writeBack(1, elapsed(started));
+    	}
+    	frames.clearDirty(found);
+    	flushCursor = found + 1;
+    	return true;
+    }
+    
+    // ------------------- prefetch( blockId, stream ) ----------------------
+    /*
+     *  Reads blockId ahead of a sequential reader on behalf 
+     *  of ReadAhead. Only a free frame or a cold victim is 
+     *  used (see prefetchable()), so a prefetch never costs a
+     *  disk write or pushes out a block in use. With admission
+     *  on, the window's oldest block and the policy's victim 
+     *  contest for the frame as on a miss. The block is left 
+     *  unreferenced so it is among the first to go if the 
+     *  reader never gets to it. 
+     */
+    public synchronized void prefetch(int blockId, int stream)
+    {
+    	if(blockIndex.get(blockId) > -1)
+    	{
+    		// Reader got there first
+    		return;
+    	}
+    	int frame = this.findFreePage();
+    	int candidate = -1;
+    	if(frame == -1 && admission != null && admission.isWindowFull())
+    	{
+    		candidate = admission.windowCandidate();
+    		frame = this.nextVictim(blockId);
+    		if(frame == -1 || !admission.admit(frames.getBlock(candidate), frames.getBlock(frame)))
+    		{
+    			// Window's oldest block loses
+    			frame = candidate;
+    			candidate = -1;
+    		}
+    	}
+    	else if(frame == -1)
+    	{
+    		frame = this.nextVictim(blockId);
+    	}
+    	if(frame == -1 || (frames.getBlock(frame) != -1 && !prefetchable(frame)))
+    	{
+    		return;
+    	}
+    	// Past the end of the disk, or any other failure
+    	if(fetch(blockId, prefetchBuffer) != 0)
+    	{
+    		return;
+    	}
+    	if(frames.getBlock(frame) != -1)
+    	{
+    		evict(frame);
+    	}
+    	if(candidate > -1)
+    	{
+    		graduate(candidate);
+    	}
+    	fill(frame, blockId, prefetchBuffer);
+    	frames.clearReferenced(frame);
+    	readAhead.markPrefetched(frame, stream);
+    }
+    
+    // ------------------- prefetchable( frame ) ----------------------
+    /*
+     *  True if prefetch() may replace the block in frame: it
+     *  is clean, unreferenced and cold, i.e. in the admission
+     *  window or outside the set the policy protects (T2 for 
+     *  ARC, the LIR blocks for LIRS). Only the clock clears 
+     *  reference bits; the other policies track reuse in 
+     *  their own lists, so for them isCold() alone decides.
+     *  A prefetched block nobody has read yet is never taken:
+     *  its reader would miss on it and, under LIRS, the 
+     *  refetch would look like a reuse. 
+     */
+    private boolean prefetchable(int frame)
+    {
+    	if(frames.isDirty(frame) || readAhead.isPrefetched(frame))
+    	{
+    		return false;
+    	}
+    	if(policy.usesReferenceBits() && frames.isReferenced(frame))
+    	{
+    		return false;
+    	}
+    	if(admission != null && admission.inWindow(frame))
+    	{
+    		return true;
+    	}
+    	return policy.isCold(frame, frames.getBlock(frame));
+    }
+    
+    // ------------------- getStats() ----------------------
+    
+    // Counters and latency histograms of this cache
+    public CacheStats getStats()
+    {
+    	return stats;
+    }
+    
+    // Start of a timed section, 0 when latencies are not timed
+    private long now()
+    {
+    	return timing ? System.nanoTime() : 0;
+    }
+    
+    // Nanoseconds since now() returned start, 0 when not timed
+    private long elapsed(long start)
+    {
+    	return timing ? System.nanoTime() - start : 0;
+    }
+    
+    // Returns number of dirty frames
+    public synchronized int getDirtyCount()
+    {
+    	return frames.getDirtyCount();
     }
     
     // Returns size of page table
     public int getTableSize()
     {
-    	return pageTable.length;
+    	return frames.getFrameCount();
     }
 }
@@ -0,0 +1,99 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  CacheFlusher is a daemon thread that writes dirty frames
+ *  of one Cache back to disk in the background, so misses
+ *  almost always find a clean victim instead of paying for
+ *  a full sync() in nextVictim().
+ *
+ *  It starts cleaning when the number of dirty frames
+ *  reaches the high watermark and stops at the low one.
+ *  On every tick it also writes back any frame that has
+ *  stayed dirty longer than the maximum age.
+ */
+
+public class CacheFlusher extends Thread {
+	private Cache cache = null;
+	private CacheOptions options = null;
+	private volatile int highWatermark;		// Dirty frames that start a cleaning pass
+	private volatile int lowWatermark;		// Dirty frames that end a cleaning pass
+	private long maxDirtyAge;		// Milliseconds, 0 = no age limit
+	private long interval;			// Milliseconds between ticks
+	private boolean wakeupPending = false;
+
+	public CacheFlusher(Cache cache, int frames, CacheOptions options)
+	{
+		this.cache = cache;
+		this.options = options;
+		resize(frames);
+		maxDirtyAge = options.maxDirtyAgeMillis;
+		interval = options.flusherIntervalMillis;
+		setDaemon(true);
+		setName("CacheFlusher");
+	}
+
+	// Watermarks are given in percent of the frames
+	public void resize(int frames)
+	{
+		int high = Math.max(1, frames * options.dirtyHighPercent / 100);
+		lowWatermark = Math.min(high - 1, frames * options.dirtyLowPercent / 100);
+		highWatermark = high;
+	}
+
+	public int getHighWatermark()
+	{
+		return highWatermark;
+	}
+
+	// Called by the cache when dirty frames cross the high watermark
+	public synchronized void wakeup()
+	{
+		wakeupPending = true;
+		notify();
+	}
+
+	public void run()
+	{
+		while(true)
+		{
+			synchronized(this)
+			{
+				try
+				{
+					if(!wakeupPending)
+					{
+						wait(interval);
+					}
+				}
+				catch(InterruptedException ex)
+				{
+					return;
+				}
+				wakeupPending = false;
+			}
+
+			// Watermark pass. Each block is written back under its
+			// own lock acquisition, so a miss waits for at most one.
+			if(cache.getDirtyCount() >= highWatermark)
+			{
+				while(cache.getDirtyCount() > lowWatermark)
+				{
+					if(!cache.writeBackNext(Long.MAX_VALUE))
+					{
+						break;
+					}
+				}
+			}
+
+			// Age pass
+			if(maxDirtyAge > 0)
+			{
+				long cutoff = System.currentTimeMillis() - maxDirtyAge;
+				while(cache.writeBackNext(cutoff))
+				{
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  CacheMonitor publishes the CacheStats of the kernel's
+ *  cache as the JMX MBean threados:type=Cache, so jconsole
+ *  or any JMX client can watch hit ratio, evictions and
+ *  latencies while ThreadOS runs.
+ */
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class CacheMonitor implements CacheMonitorMBean {
+	public static final String NAME = "threados:type=Cache";
+
+	private BlockCache cache = null;
+
+	public CacheMonitor(BlockCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/*
+	 *  Registers a monitor for cache with the platform MBean
+	 *  server, replacing one left by an earlier BOOT.
+	 */
+	public static void register(BlockCache cache) throws JMException
+	{
+		ObjectName name = new ObjectName(NAME);
+		javax.management.MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(name))
+		{
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(new CacheMonitor(cache), name);
+	}
+
+	public int getFrames()
+	{
+		return cache.getTableSize();
+	}
+
+	public int getDirtyFrames()
+	{
+		return cache.getDirtyCount();
+	}
+
+	public long getHits()
+	{
+		return cache.getStats().getHits();
+	}
+
+	public long getMisses()
+	{
+		return cache.getStats().getMisses();
+	}
+
+	public double getHitRatio()
+	{
+		return cache.getStats().getHitRatio();
+	}
+
+	public long getFills()
+	{
+		return cache.getStats().getFills();
+	}
+
+	public long getEvictionsUnreferencedClean()
+	{
+		return cache.getStats().getEvictions(false, false);
+	}
+
+	public long getEvictionsUnreferencedDirty()
+	{
+		return cache.getStats().getEvictions(false, true);
+	}
+
+	public long getEvictionsReferencedClean()
+	{
+		return cache.getStats().getEvictions(true, false);
+	}
+
+	public long getEvictionsReferencedDirty()
+	{
+		return cache.getStats().getEvictions(true, true);
+	}
+
+	public long getWriteBacks()
+	{
+		return cache.getStats().getWriteBacks();
+	}
+
+	public long getZeroWriteBacks()
+	{
+		return cache.getStats().getZeroWriteBacks();
+	}
+
+	public long getSyncs()
+	{
+		return cache.getStats().getSyncs();
+	}
+
+	public double getHitLatencyP50()
+	{
+		return micros(cache.getStats().getHitLatency(), 50);
+	}
+
+	public double getHitLatencyP99()
+	{
+		return micros(cache.getStats().getHitLatency(), 99);
+	}
+
+	public double getMissLatencyP50()
+	{
+		return micros(cache.getStats().getMissLatency(), 50);
+	}
+
+	public double getMissLatencyP99()
+	{
+		return micros(cache.getStats().getMissLatency(), 99);
+	}
+
+	public double getWriteBackLatencyP50()
+	{
+		return micros(cache.getStats().getWriteBackLatency(), 50);
+	}
+
+	public double getWriteBackLatencyP99()
+	{
+		return micros(cache.getStats().getWriteBackLatency(), 99);
+	}
+
+	public String getReport()
+	{
+		StringBuffer report = new StringBuffer();
+		cache.getStats().report(report);
+		return report.toString();
+	}
+
+	private static double micros(LatencyHistogram histogram, double percent)
+	{
+		return histogram.getPercentile(percent) / 1000.0;
+	}
+}
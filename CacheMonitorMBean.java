@@ -0,0 +1,39 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Management interface of CacheMonitor. Every attribute
+ *  is read when asked for, so a JMX console always shows
+ *  the cache as it is now. Latencies are in microseconds
+ *  and stay 0 unless -Dthreados.cache.latencystats is set.
+ */
+
+public interface CacheMonitorMBean {
+	int getFrames();
+	int getDirtyFrames();
+
+	long getHits();
+	long getMisses();
+	double getHitRatio();
+	long getFills();
+
+	// Evictions by the victim's (ref, dirty) bits
+	long getEvictionsUnreferencedClean();
+	long getEvictionsUnreferencedDirty();
+	long getEvictionsReferencedClean();
+	long getEvictionsReferencedDirty();
+
+	long getWriteBacks();
+	long getZeroWriteBacks();
+	long getSyncs();
+
+	double getHitLatencyP50();
+	double getHitLatencyP99();
+	double getMissLatencyP50();
+	double getMissLatencyP99();
+	double getWriteBackLatencyP50();
+	double getWriteBackLatencyP99();
+
+	// Every figure above as text, as CSTATS returns it
+	String getReport();
+}
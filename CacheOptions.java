@@ -0,0 +1,121 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Tunables for Cache and ShardedCache. Kernel BOOT fills
+ *  them from -Dthreados.cache.* system properties.
+ */
+
+public class CacheOptions {
+	// Total number of cache frames at boot
+	public int frames = 10;
+
+	// Number of independent shards (1 = plain Cache)
+	public int shards = 1;
+	public int shardExtent = 64;			// Consecutive blocks kept in one shard
+
+	// Keep block data in a direct ByteBuffer instead of the heap
+	public boolean offHeap = false;
+
+	// Replacement policy: "clock" (enhanced second chance), "lru", "arc"
+	// or "lirs" (scan resistant)
+	public String policy = "clock";
+
+	// W-TinyLFU admission filter (see TinyLfuAdmission)
+	public boolean admission = false;
+	public int windowPercent = 1;			// Window region size in percent of frames
+
+	// Background write-behind (see CacheFlusher)
+	public boolean flusher = false;
+	public int dirtyHighPercent = 50;		// Start cleaning at this many dirty frames
+	public int dirtyLowPercent = 25;		// Stop cleaning at this many dirty frames
+	public long maxDirtyAgeMillis = 5000;	// Write back blocks dirty this long, 0 = never
+	public long flusherIntervalMillis = 500;
+
+	// Shrink the cache when the heap runs short (see HeapPressureMonitor)
+	public boolean heapPressure = false;
+	public int heapThresholdPercent = 80;	// Heap use after GC that counts as pressure
+	public int heapShrinkPercent = 50;		// Frames kept on each shrink
+	public int heapMinFrames = 10;			// Never shrink below this
+
+	// File the resident block ids are saved to on CSYNC and at
+	// shutdown, and reloaded from at BOOT (see CacheSnapshot).
+	// null disables it.
+	public String snapshotFile = null;
+
+	// Sequential read-ahead (see ReadAhead)
+	public boolean readAhead = false;
+	public int readAheadInitial = 4;		// Blocks prefetched once a stream is seen
+	public int readAheadMax = 32;			// Largest window a stream can grow to
+
+	// Compressed tier for evicted blocks (see CompressedTier)
+	public boolean compressedTier = false;
+	public int compressedTierPercent = 100;	// Tier bytes in percent of the frames' bytes
+
+	// Threads serving readAsync() misses and writeAsync(); their disk I/O overlaps
+	public int asyncThreads = 4;
+
+	// Time reads and write-backs into the CacheStats histograms.
+	// Counters are always kept; timing costs two clock reads.
+	public boolean latencyStats = false;
+
+	/*
+	 *  Reads every option from system properties,
+	 *  keeping the default for any that is not set.
+	 */
+	public static CacheOptions fromSystemProperties()
+	{
+		CacheOptions options = new CacheOptions();
+		options.frames = Integer.getInteger("threados.cache.frames", options.frames);
+		options.shards = Integer.getInteger("threados.cache.shards", options.shards);
+		options.shardExtent = Integer.getInteger("threados.cache.shardextent", options.shardExtent);
+		options.offHeap = Boolean.getBoolean("threados.cache.offheap");
+		options.policy = System.getProperty("threados.cache.policy", options.policy);
+		options.admission = Boolean.getBoolean("threados.cache.admission");
+		options.windowPercent = Integer.getInteger("threados.cache.window", options.windowPercent);
+		options.flusher = Boolean.getBoolean("threados.cache.flusher");
+		options.dirtyHighPercent = Integer.getInteger("threados.cache.dirtyhigh", options.dirtyHighPercent);
+		options.dirtyLowPercent = Integer.getInteger("threados.cache.dirtylow", options.dirtyLowPercent);
+		options.maxDirtyAgeMillis = Long.getLong("threados.cache.dirtyage", options.maxDirtyAgeMillis);
+		options.flusherIntervalMillis = Long.getLong("threados.cache.flushinterval", options.flusherIntervalMillis);
+		options.heapPressure = Boolean.getBoolean("threados.cache.heappressure");
+		options.heapThresholdPercent = Integer.getInteger("threados.cache.heapthreshold", options.heapThresholdPercent);
+		options.heapShrinkPercent = Integer.getInteger("threados.cache.heapshrink", options.heapShrinkPercent);
+		options.heapMinFrames = Integer.getInteger("threados.cache.heapminframes", options.heapMinFrames);
+		options.snapshotFile = System.getProperty("threados.cache.snapshot", options.snapshotFile);
+		options.readAhead = Boolean.getBoolean("threados.cache.readahead");
+		options.readAheadInitial = Integer.getInteger("threados.cache.readahead.initial", options.readAheadInitial);
+		options.readAheadMax = Integer.getInteger("threados.cache.readahead.max", options.readAheadMax);
+		options.compressedTier = Boolean.getBoolean("threados.cache.compressed");
+		options.compressedTierPercent = Integer.getInteger("threados.cache.compressed.percent", options.compressedTierPercent);
+		options.asyncThreads = Integer.getInteger("threados.cache.asyncthreads", options.asyncThreads);
+		options.latencyStats = Boolean.getBoolean("threados.cache.latencystats");
+		return options;
+	}
+
+	/*
+	 *  Creates the replacement policy named by the policy
+	 *  option for the given frames.
+	 */
+	public ReplacementPolicy createPolicy(FrameTable frames)
+	{
+		if(policy.equals("clock"))
+		{
+			return new EnhancedSecondChancePolicy(frames);
+		}
+		if(policy.equals("lru"))
+		{
+			return new LruPolicy(frames);
+		}
+		if(policy.equals("arc"))
+		{
+			return new ArcPolicy(frames);
+		}
+		if(policy.equals("lirs"))
+		{
+			return new LirsPolicy(frames);
+		}
+		throw new IllegalArgumentException("Error in CacheOptions.createPolicy(frames): "
+				+ "unknown policy " + policy);
+	}
+}
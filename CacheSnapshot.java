@@ -0,0 +1,127 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  CacheSnapshot saves which blocks a cache holds (not their
+ *  data) to a small file, and warms a freshly booted cache
+ *  from it, so a restart doesn't face a cold-miss storm
+ *  until the working set is read in again.
+ *
+ *  File layout (big endian):
+ *  	int		MAGIC
+ *  	int		count
+ *  	int		block ids, count of them, ascending
+ *  	byte	reference bits, (count + 7) / 8 of them
+ *
+ *  NOTE:	Only block ids are saved, never block data, so a
+ *  		stale snapshot can cost extra reads but can never
+ *  		return wrong data.
+ */
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+public class CacheSnapshot {
+	private static final int MAGIC = 0x54434E53;	// "TCNS"
+
+	/*
+	 *  Writes the resident blocks of cache to file. The file
+	 *  is replaced atomically, so a crash mid-save leaves the
+	 *  previous snapshot. Returns false on an I/O error.
+	 */
+	public static boolean save(BlockCache cache, File file)
+	{
+		// (block << 1 | ref) sorts by block number
+		long[] entries = cache.snapshot();
+		Arrays.sort(entries);
+
+		File temp = new File(file.getPath() + ".tmp");
+		try(DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(entries.length);
+			for(int i = 0; i < entries.length; i++)
+			{
+				out.writeInt((int)(entries[i] >>> 1));
+			}
+			byte[] refs = new byte[(entries.length + 7) / 8];
+			for(int i = 0; i < entries.length; i++)
+			{
+				if((entries[i] & 1) != 0)
+				{
+					refs[i >>> 3] |= (byte)(1 << (i & 7));
+				}
+			}
+			out.write(refs);
+		}
+		catch(IOException e)
+		{
+			SysLib.cerr("Error in CacheSnapshot.save(cache, file): " + e + " \n");
+			return false;
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			SysLib.cerr("Error in CacheSnapshot.save(cache, file): " + e + " \n");
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 *  Reads the snapshot in file, if there is one, back into
+	 *  cache. Returns the number of blocks in the snapshot,
+	 *  or -1 if there was none or it could not be read.
+	 */
+	public static int restore(BlockCache cache, File file)
+	{
+		if(!file.exists())
+		{
+			return -1;
+		}
+		long[] entries;
+		try(DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file))))
+		{
+			if(in.readInt() != MAGIC)
+			{
+				SysLib.cerr("Error in CacheSnapshot.restore(cache, file): not a snapshot \n");
+				return -1;
+			}
+			int count = in.readInt();
+			if(count < 0)
+			{
+				return -1;
+			}
+			entries = new long[count];
+			for(int i = 0; i < count; i++)
+			{
+				entries[i] = (long)in.readInt() << 1;
+			}
+			byte[] refs = new byte[(count + 7) / 8];
+			in.readFully(refs);
+			for(int i = 0; i < count; i++)
+			{
+				if((refs[i >>> 3] & (1 << (i & 7))) != 0)
+				{
+					entries[i] |= 1;
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			SysLib.cerr("Error in CacheSnapshot.restore(cache, file): " + e + " \n");
+			return -1;
+		}
+		cache.warm(entries);
+		return entries.length;
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  CacheStats counts what one Cache does: hits, misses,
+ *  fills, evictions by the victim's (ref, dirty) class,
+ *  blocks written back, all-zero write-backs skipped and
+ *  sync() passes. Counters are
+ *  LongAdders, which stripe their cells over threads, so
+ *  lock-free readers can count hits without contending on
+ *  one word.
+ *
+ *  With CacheOptions.latencyStats, read() hits and misses
+ *  and every write-back are also timed into histograms.
+ *
+ *  ShardedCache adds the stats of its shards together with
+ *  addTo(), so one of its sync() calls counts once per
+ *  shard. Counts taken while the cache is busy may be a
+ *  few events apart from each other.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class CacheStats {
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder fills = new LongAdder();
+	// Indexed by (ref ? 2 : 0) + (dirty ? 1 : 0)
+	private LongAdder[] evictions = { new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder() };
+	private LongAdder writeBacks = new LongAdder();	// Blocks, not calls
+	private LongAdder zeroWriteBacks = new LongAdder();	// Skipped, disk already zero
+	private LongAdder syncs = new LongAdder();
+
+	private LatencyHistogram hitLatency = new LatencyHistogram();
+	private LatencyHistogram missLatency = new LatencyHistogram();
+	private LatencyHistogram writeBackLatency = new LatencyHistogram();
+
+	// ------------------ Recording ------------------
+
+	public void hit()
+	{
+		hits.increment();
+	}
+
+	public void miss()
+	{
+		misses.increment();
+	}
+
+	public void fill()
+	{
+		fills.increment();
+	}
+
+	// Victim's bits as they were when it was chosen
+	public void evict(boolean ref, boolean dirty)
+	{
+		evictions[(ref ? 2 : 0) + (dirty ? 1 : 0)].increment();
+	}
+
+	// blocks were written back in one call taking nanos (0 if untimed)
+	public void writeBack(int blocks, long nanos)
+	{
+		writeBacks.add(blocks);
+		if(nanos > 0)
+		{
+			writeBackLatency.record(nanos);
+		}
+	}
+
+	// blocks were all zeroes on the disk already and not written
+	public void zeroWriteBack(int blocks)
+	{
+		zeroWriteBacks.add(blocks);
+	}
+
+	public void sync()
+	{
+		syncs.increment();
+	}
+
+	public void hitLatency(long nanos)
+	{
+		hitLatency.record(nanos);
+	}
+
+	public void missLatency(long nanos)
+	{
+		missLatency.record(nanos);
+	}
+
+	// ------------------ Reading ------------------
+
+	public long getHits()
+	{
+		return hits.sum();
+	}
+
+	public long getMisses()
+	{
+		return misses.sum();
+	}
+
+	// Hits over all lookups, 0 before the first one
+	public double getHitRatio()
+	{
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total == 0) ? 0.0 : (double)h / total;
+	}
+
+	public long getFills()
+	{
+		return fills.sum();
+	}
+
+	public long getEvictions(boolean ref, boolean dirty)
+	{
+		return evictions[(ref ? 2 : 0) + (dirty ? 1 : 0)].sum();
+	}
+
+	public long getWriteBacks()
+	{
+		return writeBacks.sum();
+	}
+
+	public long getZeroWriteBacks()
+	{
+		return zeroWriteBacks.sum();
+	}
+
+	public long getSyncs()
+	{
+		return syncs.sum();
+	}
+
+	public LatencyHistogram getHitLatency()
+	{
+		return hitLatency;
+	}
+
+	public LatencyHistogram getMissLatency()
+	{
+		return missLatency;
+	}
+
+	public LatencyHistogram getWriteBackLatency()
+	{
+		return writeBackLatency;
+	}
+
+	// Adds every count of these stats to total
+	public void addTo(CacheStats total)
+	{
+		total.hits.add(hits.sum());
+		total.misses.add(misses.sum());
+		total.fills.add(fills.sum());
+		for(int i = 0; i < evictions.length; i++)
+		{
+			total.evictions[i].add(evictions[i].sum());
+		}
+		total.writeBacks.add(writeBacks.sum());
+		total.zeroWriteBacks.add(zeroWriteBacks.sum());
+		total.syncs.add(syncs.sum());
+		hitLatency.addTo(total.hitLatency);
+		missLatency.addTo(total.missLatency);
+		writeBackLatency.addTo(total.writeBackLatency);
+	}
+
+	/*
+	 *  Appends a readable report, one figure per line,
+	 *  latencies in microseconds.
+	 */
+	public void report(StringBuffer out)
+	{
+		out.append("hits ").append(getHits()).append('\n');
+		out.append("misses ").append(getMisses()).append('\n');
+		out.append("hit ratio ").append(String.format("%.4f", getHitRatio())).append('\n');
+		out.append("fills ").append(getFills()).append('\n');
+		out.append("evictions (ref, dirty) = (0, 0) ").append(getEvictions(false, false)).append('\n');
+		out.append("evictions (ref, dirty) = (0, 1) ").append(getEvictions(false, true)).append('\n');
+		out.append("evictions (ref, dirty) = (1, 0) ").append(getEvictions(true, false)).append('\n');
+		out.append("evictions (ref, dirty) = (1, 1) ").append(getEvictions(true, true)).append('\n');
+		out.append("write-backs ").append(getWriteBacks()).append('\n');
+		out.append("zero write-backs skipped ").append(getZeroWriteBacks()).append('\n');
+		out.append("syncs ").append(getSyncs()).append('\n');
+		reportLatency(out, "hit", hitLatency);
+		reportLatency(out, "miss", missLatency);
+		reportLatency(out, "write-back", writeBackLatency);
+	}
+
+	private static void reportLatency(StringBuffer out, String name, LatencyHistogram histogram)
+	{
+		long count = histogram.getCount();
+		if(count == 0)
+		{
+			return;
+		}
+		out.append(name).append(" latency us: count ").append(count)
+				.append(" p50 ").append(micros(histogram.getPercentile(50)))
+				.append(" p99 ").append(micros(histogram.getPercentile(99)))
+				.append(" p99.9 ").append(micros(histogram.getPercentile(99.9)))
+				.append(" max ").append(micros(histogram.getPercentile(100))).append('\n');
+	}
+
+	private static String micros(long nanos)
+	{
+		return String.format("%.1f", nanos / 1000.0);
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  CompressedTier sits below the frames of one Cache. Clean
+ *  blocks evicted from the frames are kept here compressed
+ *  with LzCodec, and a miss that finds its block here is
+ *  decompressed instead of read from the disk.
+ *
+ *  A block is never in the frames and the tier at once: it
+ *  is demoted when evicted and taken out again when promoted.
+ *  Only clean blocks are demoted, so dropping one from the
+ *  tier never loses data. The oldest blocks are dropped when
+ *  the tier goes over its byte budget.
+ *
+ *  Identical blocks share one compressed copy, found by a
+ *  fingerprint of the compressed bytes and counted by
+ *  references. All-zero blocks take no data bytes at all.
+ *  Copies are never changed in place: a block that is written
+ *  is promoted first, which leaves the shared copy alone.
+ *
+ *  NOTE:	Every method must be called while holding the
+ *  		owning cache's lock.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class CompressedTier {
+	// Rough heap cost of one block entry (map entry, boxed key)
+	// and of one copy besides its bytes (object, array header,
+	// fingerprint map entry)
+	private static final int ENTRY_OVERHEAD = 48;
+	private static final int COPY_OVERHEAD = 80;
+
+	// One compressed copy, shared by every block holding its contents
+	private static class Copy
+	{
+		private byte[] packed;
+		private long fingerprint;
+		private int refs = 0;
+		private boolean indexed = false;	// Reachable from copies
+	}
+
+	// Stands for every all-zero block; never counted or freed
+	private static final Copy ZERO = new Copy();
+
+	private LzCodec codec = new LzCodec();
+	private int blockSize;
+	private long capacity;		// Byte budget, entries included
+	private long used = 0;
+
+	// Copy of each block by block id, least recently demoted first
+	private LinkedHashMap<Integer, Copy> blocks = new LinkedHashMap<Integer, Copy>();
+	// Copies by fingerprint, for finding a block's twin
+	private HashMap<Long, Copy> copies = new HashMap<Long, Copy>();
+	private int zeroBlocks = 0;
+
+	// Output of the codec before it is trimmed to size
+	private byte[] buffer = null;
+
+	public CompressedTier(int blockSize, long capacityBytes)
+	{
+		if(blockSize < 1 || capacityBytes < 0)
+		{
+			throw new IllegalArgumentException("Error in CompressedTier(int blockSize, long capacityBytes): "
+					+ "blockSize must be > 0 and capacityBytes >= 0");
+		}
+		this.blockSize = blockSize;
+		capacity = capacityBytes;
+		buffer = new byte[LzCodec.maxCompressedLength(blockSize)];
+	}
+
+	/*
+	 *  Keeps a compressed copy of data[] for blockId, making
+	 *  room by dropping the oldest blocks. A block that would
+	 *  take as much memory as a frame is not kept.
+	 */
+	public void put(int blockId, byte data[])
+	{
+		remove(blockId);
+		if(isZero(data))
+		{
+			link(blockId, ZERO);
+			zeroBlocks++;
+			trim();
+			return;
+		}
+
+		int length = codec.compress(data, blockSize, buffer);
+		long fingerprint = fingerprint(buffer, length);
+		Copy copy = copies.get(fingerprint);
+		if(copy != null && copy.packed.length == length
+				&& Arrays.equals(copy.packed, 0, length, buffer, 0, length))
+		{
+			// Twin already here, only the entry costs memory
+			link(blockId, copy);
+			trim();
+			return;
+		}
+		if(length + COPY_OVERHEAD + ENTRY_OVERHEAD >= blockSize
+				|| length + COPY_OVERHEAD + ENTRY_OVERHEAD > capacity)
+		{
+			return;
+		}
+		copy = new Copy();
+		copy.packed = Arrays.copyOf(buffer, length);
+		copy.fingerprint = fingerprint;
+		if(!copies.containsKey(fingerprint))
+		{
+			// On a fingerprint collision the new copy just isn't shared
+			copies.put(fingerprint, copy);
+			copy.indexed = true;
+		}
+		used += length + COPY_OVERHEAD;
+		link(blockId, copy);
+		trim();
+	}
+
+	/*
+	 *  Decompresses blockId into dst[] and removes it from
+	 *  the tier. Returns false if the tier doesn't hold it.
+	 */
+	public boolean take(int blockId, byte dst[])
+	{
+		Copy copy = blocks.remove(blockId);
+		if(copy == null)
+		{
+			return false;
+		}
+		if(copy == ZERO)
+		{
+			Arrays.fill(dst, 0, blockSize, (byte)0);
+		}
+		else
+		{
+			codec.decompress(copy.packed, copy.packed.length, dst);
+		}
+		unlink(copy);
+		return true;
+	}
+
+	public boolean contains(int blockId)
+	{
+		return blocks.containsKey(blockId);
+	}
+
+	// Forgets blockId, if held
+	public void remove(int blockId)
+	{
+		Copy copy = blocks.remove(blockId);
+		if(copy != null)
+		{
+			unlink(copy);
+		}
+	}
+
+	public void clear()
+	{
+		blocks.clear();
+		copies.clear();
+		zeroBlocks = 0;
+		used = 0;
+	}
+
+	public void setCapacity(long capacityBytes)
+	{
+		capacity = capacityBytes;
+		trim();
+	}
+
+	public int getBlockCount()
+	{
+		return blocks.size();
+	}
+
+	public long getUsedBytes()
+	{
+		return used;
+	}
+
+	// Blocks held as all zeroes
+	public int getZeroBlockCount()
+	{
+		return zeroBlocks;
+	}
+
+	// Compressed copies held; fewer than the blocks when some share one
+	public int getCopyCount()
+	{
+		return copies.size();
+	}
+
+	// ------------------ helpers ------------------
+
+	private void link(int blockId, Copy copy)
+	{
+		blocks.put(blockId, copy);
+		if(copy != ZERO)
+		{
+			copy.refs++;
+		}
+		used += ENTRY_OVERHEAD;
+	}
+
+	// One block entry of copy is gone; frees the copy with the last one
+	private void unlink(Copy copy)
+	{
+		used -= ENTRY_OVERHEAD;
+		if(copy == ZERO)
+		{
+			zeroBlocks--;
+			return;
+		}
+		copy.refs--;
+		if(copy.refs == 0)
+		{
+			used -= copy.packed.length + COPY_OVERHEAD;
+			if(copy.indexed)
+			{
+				copies.remove(copy.fingerprint);
+			}
+		}
+	}
+
+	// Drops the oldest blocks until the budget is met
+	private void trim()
+	{
+		Iterator<Copy> it = blocks.values().iterator();
+		while(used > capacity && it.hasNext())
+		{
+			Copy copy = it.next();
+			it.remove();
+			unlink(copy);
+		}
+	}
+
+	private boolean isZero(byte data[])
+	{
+		for(int i = 0; i < blockSize; i++)
+		{
+			if(data[i] != 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// 64-bit FNV-1a
+	private static long fingerprint(byte packed[], int length)
+	{
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < length; i++)
+		{
+			h = (h ^ (packed[i] & 0xFF)) * 0x100000001b3L;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  FrameStore keeping every frame in one direct (off-heap)
+ *  ByteBuffer. Block data then adds nothing to the Java
+ *  heap and is never scanned or moved by the GC.
+ *
+ *  NOTE:	Only absolute get/put are used, so the buffer's
+ *  		position is never shared between threads.
+ */
+
+import java.nio.ByteBuffer;
+
+public class DirectFrameStore implements FrameStore {
+	private ByteBuffer region = null;
+	private int blockSize;
+	private int frameCount;
+
+	public DirectFrameStore(int blkSize, int frames)
+	{
+		long bytes = (long)blkSize * frames;
+		if(blkSize < 1 || frames < 1 || bytes > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Error in DirectFrameStore(int blockSize, int frames): "
+					+ "parameters must be > 0 and fit in one buffer");
+		}
+		blockSize = blkSize;
+		frameCount = frames;
+		region = ByteBuffer.allocateDirect((int)bytes);
+	}
+
+	public void read(int frame, int offset, byte dst[], int dstOffset, int length)
+	{
+		region.get(frame * blockSize + offset, dst, dstOffset, length);
+	}
+
+	public void write(int frame, int offset, byte src[], int srcOffset, int length)
+	{
+		region.put(frame * blockSize + offset, src, srcOffset, length);
+	}
+
+	public ByteBuffer view(int frame)
+	{
+		return region.slice(frame * blockSize, blockSize);
+	}
+
+	public byte get(int frame, int offset)
+	{
+		return region.get(frame * blockSize + offset);
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+}
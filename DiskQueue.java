@@ -0,0 +1,240 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  DiskQueue lets any number of threads have requests
+ *  outstanding on one BlockDevice at a time. A dispatcher
+ *  thread hands them to the device one by one in C-LOOK
+ *  order: ascending block numbers past the current head
+ *  position, then back to the lowest pending block. The
+ *  head's own block waits for the next sweep, so a stream
+ *  of requests to one block can't hold the head there.
+ *
+ *  With a deadline, a request that has waited longer than
+ *  that is served next regardless of its block number, so
+ *  requests far from a busy region can't starve.
+ *
+ *  A sync is a barrier. It runs once every request that
+ *  arrived before it has been served. While one is waiting,
+ *  requests are served oldest first to get there quickly.
+ */
+
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DiskQueue implements BlockDevice {
+	private BlockDevice device = null;
+	private long deadlineNanos;		// 0 = pure C-LOOK
+
+	// Pending reads and writes by block, each block's in arrival order
+	private TreeMap<Integer, ArrayDeque<DiskRequest>> pending = new TreeMap<Integer, ArrayDeque<DiskRequest>>();
+	// Same requests in arrival order; served ones are skipped lazily
+	private ArrayDeque<DiskRequest> arrivals = new ArrayDeque<DiskRequest>();
+	private ArrayDeque<DiskRequest> syncs = new ArrayDeque<DiskRequest>();
+	private long nextSeq = 0;
+	private int head = 0;			// Block the device was last at
+	private AtomicInteger outstanding = new AtomicInteger();	// Queued or being served
+
+	/*
+	 *  Queues requests for device, which is only ever called
+	 *  from the dispatcher thread. deadlineMillis of 0 means
+	 *  no deadline.
+	 */
+	public DiskQueue(BlockDevice device, long deadlineMillis)
+	{
+		this.device = device;
+		deadlineNanos = deadlineMillis * 1000000L;
+		Thread dispatcher = new Thread(this::dispatch, "DiskQueue");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		return submit(DiskRequest.READ, blockId, buffer).await();
+	}
+
+	public boolean write(int blockId, byte buffer[])
+	{
+		return submit(DiskRequest.WRITE, blockId, buffer).await();
+	}
+
+	// The whole batch is queued before waiting, so the
+	// dispatcher can order it with everything else
+	public boolean readv(int blockIds[], byte buffers[][])
+	{
+		return submitAll(DiskRequest.READ, blockIds, buffers);
+	}
+
+	public boolean writev(int blockIds[], byte buffers[][])
+	{
+		return submitAll(DiskRequest.WRITE, blockIds, buffers);
+	}
+
+	public boolean sync()
+	{
+		return submit(DiskRequest.SYNC, -1, null).await();
+	}
+
+	public int getBlockSize()
+	{
+		return device.getBlockSize();
+	}
+
+	public int getBlockCount()
+	{
+		return device.getBlockCount();
+	}
+
+	// Requests submitted and not yet complete, including the one being served
+	public int getQueueLength()
+	{
+		return outstanding.get();
+	}
+
+	private boolean submitAll(int op, int blockIds[], byte buffers[][])
+	{
+		DiskRequest[] requests = new DiskRequest[blockIds.length];
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			requests[i] = submit(op, blockIds[i], buffers[i]);
+		}
+		boolean success = true;
+		for(int i = 0; i < requests.length; i++)
+		{
+			success &= requests[i].await();
+		}
+		return success;
+	}
+
+	/*
+	 *  Queues one request without waiting for it. The caller
+	 *  must await() it from the same thread.
+	 */
+	public synchronized DiskRequest submit(int op, int blockId, byte buffer[])
+	{
+		if(op != DiskRequest.SYNC && blockId < 0)
+		{
+			throw new IllegalArgumentException("Error in DiskQueue.submit(op, blockId, buffer): "
+					+ "blockId must be >= 0");
+		}
+		long now = System.nanoTime();
+		long deadline = (deadlineNanos > 0) ? now + deadlineNanos : Long.MAX_VALUE;
+		DiskRequest request = new DiskRequest(op, blockId, buffer, nextSeq++, deadline);
+		outstanding.incrementAndGet();
+		if(op == DiskRequest.SYNC)
+		{
+			syncs.addLast(request);
+		}
+		else
+		{
+			ArrayDeque<DiskRequest> block = pending.get(blockId);
+			if(block == null)
+			{
+				block = new ArrayDeque<DiskRequest>();
+				pending.put(blockId, block);
+			}
+			block.addLast(request);
+			arrivals.addLast(request);
+		}
+		notify();
+		return request;
+	}
+
+	// Dispatcher thread: serves one request at a time, forever
+	private void dispatch()
+	{
+		while(true)
+		{
+			DiskRequest request;
+			synchronized(this)
+			{
+				while((request = next()) == null)
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException ex)
+					{
+						return;
+					}
+				}
+			}
+
+			boolean success;
+			switch(request.op)
+			{
+			case DiskRequest.READ:
+				success = device.read(request.blockId, request.buffer);
+				break;
+			case DiskRequest.WRITE:
+				success = device.write(request.blockId, request.buffer);
+				break;
+			default:
+				success = device.sync();
+				break;
+			}
+			outstanding.decrementAndGet();
+			request.complete(success);
+		}
+	}
+
+	/*
+	 *  Picks and removes the next request to serve, or
+	 *  returns null if there is none. Caller holds the lock.
+	 */
+	private DiskRequest next()
+	{
+		DiskRequest oldest = oldestPending();
+		if(!syncs.isEmpty())
+		{
+			// Barrier: everything older than the sync goes first
+			if(oldest == null || syncs.peekFirst().seq < oldest.seq)
+			{
+				return syncs.pollFirst();
+			}
+			return take(oldest);
+		}
+		if(oldest == null)
+		{
+			return null;
+		}
+		if(oldest.deadline <= System.nanoTime())
+		{
+			return take(oldest);
+		}
+
+		// C-LOOK: next block above the head, else wrap around
+		Integer key = pending.higherKey(head);
+		if(key == null)
+		{
+			key = pending.firstKey();
+		}
+		return take(pending.get(key).peekFirst());
+	}
+
+	private DiskRequest oldestPending()
+	{
+		while(!arrivals.isEmpty() && arrivals.peekFirst().served)
+		{
+			arrivals.pollFirst();
+		}
+		return arrivals.peekFirst();
+	}
+
+	// request must be the oldest pending one for its block
+	private DiskRequest take(DiskRequest request)
+	{
+		ArrayDeque<DiskRequest> block = pending.get(request.blockId);
+		block.pollFirst();
+		if(block.isEmpty())
+		{
+			pending.remove(request.blockId);
+		}
+		request.served = true;
+		head = request.blockId;
+		return request;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  One read, write or sync waiting in a DiskQueue. The
+ *  thread that submitted it parks until the request is
+ *  complete, and completing it unparks exactly that thread.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+public class DiskRequest {
+	public static final int READ = 0;
+	public static final int WRITE = 1;
+	public static final int SYNC = 2;
+
+	final int op;
+	final int blockId;
+	final byte[] buffer;
+	final long seq;				// Arrival order
+	final long deadline;		// System.nanoTime() to serve it by, Long.MAX_VALUE if none
+	boolean served = false;		// Taken by the dispatcher
+
+	private Thread waiter = Thread.currentThread();	// Thread that submitted it
+	private volatile boolean done = false;
+	private boolean result;							// Published by done
+
+	DiskRequest(int op, int blockId, byte buffer[], long seq, long deadline)
+	{
+		this.op = op;
+		this.blockId = blockId;
+		this.buffer = buffer;
+		this.seq = seq;
+		this.deadline = deadline;
+	}
+
+	// Parks the submitting thread until complete() and returns its result
+	public boolean await()
+	{
+		// park() may return spuriously or on an interrupt; the
+		// transfer is queued either way, so keep waiting for it
+		while(!done)
+		{
+			LockSupport.park(this);
+		}
+		return result;
+	}
+
+	/*
+	 *  Parks for at most nanos nanoseconds. Returns true if
+	 *  the request is complete; await() then returns at once.
+	 */
+	public boolean awaitNanos(long nanos)
+	{
+		long end = System.nanoTime() + nanos;
+		while(!done)
+		{
+			long left = end - System.nanoTime();
+			if(left <= 0)
+			{
+				return false;
+			}
+			LockSupport.parkNanos(this, left);
+		}
+		return true;
+	}
+
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	public void complete(boolean success)
+	{
+		result = success;
+		done = true;
+		LockSupport.unpark(waiter);
+	}
+}
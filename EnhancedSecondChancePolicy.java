@@ -0,0 +1,103 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Enhanced second chance (clock) replacement using all four
+ *  (reference, dirty) classes, in decreasing preference:
+ *
+ *  	( ref = 0, dirty = 0 )	not recently used, clean
+ *  	( ref = 0, dirty = 1 )	not recently used, dirty
+ *  	( ref = 1, dirty = 0 )	recently used, clean
+ *  	( ref = 1, dirty = 1 )	recently used, dirty
+ *
+ *  A dirty victim costs one block write, which is always
+ *  cheaper than syncing the whole cache to find a clean one.
+ */
+
+public class EnhancedSecondChancePolicy implements ReplacementPolicy {
+	private FrameTable frames = null;
+
+	// clock hand
+	private int clockPtr = 0;
+
+	public EnhancedSecondChancePolicy(FrameTable frames)
+	{
+		this.frames = frames;
+	}
+
+	// The clock only looks at the frame bits
+	public void onHit(int frame, int blockId)
+	{
+	}
+
+	public void onFill(int frame, int blockId)
+	{
+	}
+
+	public void onEvict(int frame, int blockId)
+	{
+	}
+
+	public void onInvalidate(int frame, int blockId)
+	{
+	}
+
+	public boolean usesReferenceBits()
+	{
+		return true;
+	}
+
+	// Only the reference bit marks a block as in use
+	public boolean isCold(int frame, int blockId)
+	{
+		return true;
+	}
+
+	/*
+	 *  Classic four step scan:
+	 *  1. look for (0, 0) without touching any bits
+	 *  2. look for (0, 1), clearing reference bits on the way
+	 *  3. look for (0, 0) again, all reference bits are now 0
+	 *  4. look for (0, 1) again
+	 *  After step 2 every frame is in class (0, x), so step 3
+	 *  or 4 always succeeds while any frame is evictable.
+	 */
+	public int selectVictim(int blockId)
+	{
+		int victim = findCase(false, false, false);
+		if(victim == -1)
+		{
+			victim = findCase(false, true, true);
+		}
+		if(victim == -1)
+		{
+			victim = findCase(false, false, false);
+		}
+		if(victim == -1)
+		{
+			victim = findCase(false, true, false);
+		}
+		if(victim == -1)
+		{
+			// Code should NOT reach this point unless no frame is evictable
+			SysLib.cerr("No cases of valid (ref, dirty) found (NOT POSSIBLE UNDER NORMAL CIRCUMSTANCES) \n");
+		}
+		return victim;
+	}
+
+	// One turn of the clock for class (ref, dirty). Leaves the
+	// hand just past the frame found.
+	private int findCase(boolean ref, boolean dirty, boolean clearPassed)
+	{
+		if(clockPtr >= frames.getFrameCount())
+		{
+			clockPtr = 0;
+		}
+		int found = frames.scanClock(clockPtr, ref, dirty, clearPassed);
+		if(found > -1)
+		{
+			clockPtr = (found + 1) % frames.getFrameCount();
+		}
+		return found;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Doubly linked list of frame numbers kept in primitive
+ *  prev/next arrays, so moving a frame to the front or
+ *  removing it is O(1) without allocating list nodes.
+ *  The head is the most recently used frame.
+ */
+
+import java.util.Arrays;
+
+public class FrameList {
+	private static final int NONE = -1;
+
+	private int[] prev = null;
+	private int[] next = null;
+	private boolean[] member = null;
+	private int head = NONE;
+	private int tail = NONE;
+	private int size = 0;
+
+	public FrameList(int frames)
+	{
+		prev = new int[frames];
+		next = new int[frames];
+		member = new boolean[frames];
+		Arrays.fill(prev, NONE);
+		Arrays.fill(next, NONE);
+	}
+
+	public boolean contains(int frame)
+	{
+		return member[frame];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// Least recently used frame, -1 if empty
+	public int tail()
+	{
+		return tail;
+	}
+
+	// Frame just ahead of frame (more recently used), -1 at the head
+	public int previous(int frame)
+	{
+		return prev[frame];
+	}
+
+	// Inserts frame at the head, moving it if already present
+	public void pushFront(int frame)
+	{
+		if(member[frame])
+		{
+			if(head == frame)
+			{
+				return;
+			}
+			remove(frame);
+		}
+		prev[frame] = NONE;
+		next[frame] = head;
+		if(head != NONE)
+		{
+			prev[head] = frame;
+		}
+		head = frame;
+		if(tail == NONE)
+		{
+			tail = frame;
+		}
+		member[frame] = true;
+		size++;
+	}
+
+	public void remove(int frame)
+	{
+		if(!member[frame])
+		{
+			return;
+		}
+		if(prev[frame] != NONE)
+		{
+			next[prev[frame]] = next[frame];
+		}
+		else
+		{
+			head = next[frame];
+		}
+		if(next[frame] != NONE)
+		{
+			prev[next[frame]] = prev[frame];
+		}
+		else
+		{
+			tail = prev[frame];
+		}
+		prev[frame] = NONE;
+		next[frame] = NONE;
+		member[frame] = false;
+		size--;
+	}
+}
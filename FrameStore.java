@@ -0,0 +1,32 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Storage for the data of every cache frame. Frame f
+ *  occupies bytes [f * blockSize, (f + 1) * blockSize)
+ *  of one contiguous region.
+ *
+ *  NOTE:	Implementations must allow copies out of one
+ *  		frame to run concurrently with copies into
+ *  		another, since cache hits are served lock-free.
+ */
+
+import java.nio.ByteBuffer;
+
+public interface FrameStore {
+	// Copies length bytes at offset of frame into dst[dstOffset..]
+	void read(int frame, int offset, byte dst[], int dstOffset, int length);
+
+	// Copies length bytes of src[srcOffset..] into frame at offset
+	void write(int frame, int offset, byte src[], int srcOffset, int length);
+
+	// Buffer sharing the frame's bytes, position 0 and capacity blockSize
+	ByteBuffer view(int frame);
+
+	// Returns a single byte of a frame (debug output only)
+	byte get(int frame, int offset);
+
+	int getBlockSize();
+
+	int getFrameCount();
+}
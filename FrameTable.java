@@ -0,0 +1,406 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  FrameTable holds the cache frames as parallel primitive
+ *  arrays (struct of arrays) instead of one Entry object
+ *  per frame: block numbers in an int[], the reference,
+ *  dirty and valid bits packed 64 frames per long word,
+ *  the seqlock version stamps in an int[], and the block
+ *  data in a FrameStore. Free frames are kept on a stack.
+ *
+ *  Packing the bits lets the clock hand test 64 frames per
+ *  step with Long.numberOfTrailingZeros, so a victim scan
+ *  costs O(frames / 64) and finding a free frame is O(1).
+ *
+ *  NOTE:	Everything except setReferenced(), getVersion()
+ *  		and the readData() methods must be called while
+ *  		holding the owning cache's lock.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+public class FrameTable {
+	// Atomic access to single elements of refWords[] and versions[]
+	private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final VarHandle VERSION = MethodHandles.arrayElementVarHandle(int[].class);
+
+	private FrameStore store = null;
+	private int[] blockOf = null;	// Disk block held by each frame, -1 if free
+	private int[] versions = null;	// Odd while a frame is being changed
+
+	// Bit (frame & 63) of word (frame >>> 6) belongs to frame
+	private long[] refWords = null;		// Reference bits
+	private long[] dirtyWords = null;	// Dirty bits
+	private long[] validWords = null;	// Set while a frame holds a block
+	private long[] heldWords = null;	// Frames victim scans must skip
+	private long[] dirtySince = null;	// When each frame last became dirty
+
+	// Dense list of dirty frames, so writing them all back
+	// costs O(dirty) instead of O(frames). dirtyPos[frame]
+	// is the frame's slot in dirtyList, or -1 if clean.
+	private int[] dirtyList = null;
+	private int[] dirtyPos = null;
+	private int dirtyCount;
+
+	// Stack of free frames. freePos[frame] is the frame's
+	// slot in freeStack, or -1 if the frame is in use.
+	private int[] freeStack = null;
+	private int[] freePos = null;
+	private int freeTop;
+
+	/*
+	 *  Creates frames free frames of blkSize bytes, stored
+	 *  off-heap when offHeap is true.
+	 */
+	public FrameTable(int blkSize, int frames, boolean offHeap)
+	{
+		if(offHeap)
+		{
+			store = new DirectFrameStore(blkSize, frames);
+		}
+		else
+		{
+			store = new HeapFrameStore(blkSize, frames);
+		}
+		blockOf = new int[frames];
+		versions = new int[frames];
+		java.util.Arrays.fill(blockOf, -1);
+
+		int words = (frames + 63) >>> 6;
+		refWords = new long[words];
+		dirtyWords = new long[words];
+		validWords = new long[words];
+		heldWords = new long[words];
+		dirtySince = new long[frames];
+		dirtyList = new int[frames];
+		dirtyPos = new int[frames];
+		java.util.Arrays.fill(dirtyPos, -1);
+
+		// Every frame starts out free. Pushed in reverse
+		// so frame 0 is handed out first.
+		freeStack = new int[frames];
+		freePos = new int[frames];
+		for(int i = 0; i < frames; i++)
+		{
+			freeStack[i] = frames - 1 - i;
+			freePos[frames - 1 - i] = i;
+		}
+		freeTop = frames;
+	}
+
+	public int getFrameCount()
+	{
+		return blockOf.length;
+	}
+
+	public int getBlockSize()
+	{
+		return store.getBlockSize();
+	}
+
+	// ------------------ Block numbers ------------------
+
+	// Returns disk block held by frame, -1 if frame is free
+	public int getBlock(int frame)
+	{
+		return blockOf[frame];
+	}
+
+	/*
+	 *  Gives frame to blockId, or frees it when blockId is -1.
+	 *  Keeps the valid bits and the free stack in step.
+	 */
+	public void setBlock(int frame, int blockId)
+	{
+		int old = blockOf[frame];
+		blockOf[frame] = blockId;
+		if(old == -1 && blockId != -1)
+		{
+			validWords[frame >>> 6] |= (1L << frame);
+			removeFree(frame);
+		}
+		else if(old != -1 && blockId == -1)
+		{
+			validWords[frame >>> 6] &= ~(1L << frame);
+			pushFree(frame);
+		}
+	}
+
+	// ------------------ Free frame stack ------------------
+
+	// Returns a free frame without removing it, -1 if none
+	public int peekFree()
+	{
+		return (freeTop > 0) ? freeStack[freeTop - 1] : -1;
+	}
+
+	public int getFreeCount()
+	{
+		return freeTop;
+	}
+
+	private void pushFree(int frame)
+	{
+		freeStack[freeTop] = frame;
+		freePos[frame] = freeTop;
+		freeTop++;
+	}
+
+	// Removes frame from anywhere in the stack by
+	// moving the top element into its slot.
+	private void removeFree(int frame)
+	{
+		int pos = freePos[frame];
+		freeTop--;
+		int last = freeStack[freeTop];
+		freeStack[pos] = last;
+		freePos[last] = pos;
+		freePos[frame] = -1;
+	}
+
+	// ---------- Setting and clearing reference and dirty bits ----------
+	// Reference words are changed with atomic bit operations
+	// because lock-free readers set them concurrently.
+
+	public boolean isReferenced(int frame)
+	{
+		return (refWords[frame >>> 6] & (1L << frame)) != 0;
+	}
+
+	public void setReferenced(int frame)
+	{
+		long bit = 1L << frame;
+		if((refWords[frame >>> 6] & bit) == 0)
+		{
+			WORD.getAndBitwiseOrRelease(refWords, frame >>> 6, bit);
+		}
+	}
+
+	public void clearReferenced(int frame)
+	{
+		WORD.getAndBitwiseAndRelease(refWords, frame >>> 6, ~(1L << frame));
+	}
+
+	public boolean isDirty(int frame)
+	{
+		return (dirtyWords[frame >>> 6] & (1L << frame)) != 0;
+	}
+
+	public void setDirty(int frame)
+	{
+		long bit = 1L << frame;
+		if((dirtyWords[frame >>> 6] & bit) == 0)
+		{
+			dirtyWords[frame >>> 6] |= bit;
+			dirtyList[dirtyCount] = frame;
+			dirtyPos[frame] = dirtyCount;
+			dirtyCount++;
+			dirtySince[frame] = System.currentTimeMillis();
+		}
+	}
+
+	public void clearDirty(int frame)
+	{
+		long bit = 1L << frame;
+		if((dirtyWords[frame >>> 6] & bit) != 0)
+		{
+			dirtyWords[frame >>> 6] &= ~bit;
+			// Last dirty frame takes over the freed slot
+			dirtyCount--;
+			int pos = dirtyPos[frame];
+			int last = dirtyList[dirtyCount];
+			dirtyList[pos] = last;
+			dirtyPos[last] = pos;
+			dirtyPos[frame] = -1;
+		}
+	}
+
+	public int getDirtyCount()
+	{
+		return dirtyCount;
+	}
+
+	// i-th dirty frame, 0 <= i < getDirtyCount(), in no particular order
+	public int getDirtyFrame(int i)
+	{
+		return dirtyList[i];
+	}
+
+	// Time in milliseconds when frame went from clean to dirty
+	public long getDirtySince(int frame)
+	{
+		return dirtySince[frame];
+	}
+
+	/*
+	 *  Returns the first dirty frame at or after frame,
+	 *  or -1 if there is none. Skips 64 clean frames
+	 *  per step.
+	 */
+	public int nextDirty(int frame)
+	{
+		int w = frame >>> 6;
+		if(w >= dirtyWords.length)
+		{
+			return -1;
+		}
+		long word = dirtyWords[w] & (-1L << frame);
+		while(word == 0)
+		{
+			w++;
+			if(w == dirtyWords.length)
+			{
+				return -1;
+			}
+			word = dirtyWords[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	// ------------------ Held frames ------------------
+
+	// Keeps frame out of clock victim scans
+	public void hold(int frame)
+	{
+		heldWords[frame >>> 6] |= (1L << frame);
+	}
+
+	public void release(int frame)
+	{
+		heldWords[frame >>> 6] &= ~(1L << frame);
+	}
+
+	public boolean isHeld(int frame)
+	{
+		return (heldWords[frame >>> 6] & (1L << frame)) != 0;
+	}
+
+	// ------------------ Clock scan ------------------
+
+	/*
+	 *  One full turn of the clock hand starting at frame from,
+	 *  looking for a valid, unheld frame whose (ref, dirty) bits equal
+	 *  the arguments. If clearPassed is set, frames passed over
+	 *  get their reference bit cleared (their second chance).
+	 *  Returns the frame found, or -1 after a full turn
+	 *  without a match.
+	 */
+	public int scanClock(int from, boolean ref, boolean dirty, boolean clearPassed)
+	{
+		int words = validWords.length;
+		int first = from >>> 6;
+		long firstMask = -1L << from;
+
+		// words + 1 steps: the first word is visited again at
+		// the end for the frames below from.
+		for(int n = 0; n <= words; n++)
+		{
+			int w = (first + n) % words;
+			long mask = -1L;
+			if(n == 0)
+			{
+				mask = firstMask;
+			}
+			else if(n == words)
+			{
+				mask = ~firstMask;
+			}
+
+			long refs = refWords[w];
+			long candidates = validWords[w] & ~heldWords[w] & mask
+					& (ref ? refs : ~refs)
+					& (dirty ? dirtyWords[w] : ~dirtyWords[w]);
+			if(candidates != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(candidates);
+				// Only frames before the match were passed over
+				if(clearPassed)
+				{
+					clearReferencedBits(w, mask & ((1L << bit) - 1));
+				}
+				return (w << 6) + bit;
+			}
+			if(clearPassed)
+			{
+				clearReferencedBits(w, mask);
+			}
+		}
+		return -1;
+	}
+
+	private void clearReferencedBits(int word, long bits)
+	{
+		if((refWords[word] & bits) != 0)
+		{
+			WORD.getAndBitwiseAndRelease(refWords, word, ~bits);
+		}
+	}
+
+	// ------------------ Version stamps ------------------
+
+	public int getVersion(int frame)
+	{
+		return (int)VERSION.getVolatile(versions, frame);
+	}
+
+	// Makes the frame's stamp odd before its data or block changes
+	public void beginUpdate(int frame)
+	{
+		VERSION.setVolatile(versions, frame, versions[frame] + 1);
+		// Stores to the frame may not move above the odd stamp
+		VarHandle.storeStoreFence();
+	}
+
+	// Makes the stamp even again, publishing the new contents
+	public void endUpdate(int frame)
+	{
+		VERSION.setVolatile(versions, frame, versions[frame] + 1);
+	}
+
+	// ------------------ Block data ------------------
+
+	public void readData(int frame, byte dst[])
+	{
+		store.read(frame, 0, dst, 0, dst.length);
+	}
+
+	public void writeData(int frame, byte src[])
+	{
+		store.write(frame, 0, src, 0, src.length);
+	}
+
+	// dst.length bytes starting at offset within the frame
+	public void readData(int frame, int offset, byte dst[])
+	{
+		store.read(frame, offset, dst, 0, dst.length);
+	}
+
+	public void writeData(int frame, int offset, byte src[])
+	{
+		store.write(frame, offset, src, 0, src.length);
+	}
+
+	// Buffer sharing the frame's bytes (see FrameStore.view())
+	public java.nio.ByteBuffer view(int frame)
+	{
+		return store.view(frame);
+	}
+
+	// Single byte of a frame, for debug output
+	public byte byteAt(int frame, int offset)
+	{
+		return store.get(frame, offset);
+	}
+
+	// Makes a frame free again
+	public void invalidate(int frame)
+	{
+		beginUpdate(frame);
+		setBlock(frame, -1);
+		clearReferenced(frame);
+		clearDirty(frame);
+		endUpdate(frame);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Count-min sketch of 4-bit counters estimating how often
+ *  each block was accessed recently. Sixteen counters are
+ *  packed in every long, each block maps to one counter in
+ *  each of four rows, and its estimate is the smallest of
+ *  those four. After sampleSize increments every counter is
+ *  halved, so old popularity fades away.
+ *
+ *  NOTE:	Lock-free cache hits call increment() without the
+ *  		cache lock, so every word is updated with compare and
+ *  		set: a counter never carries into its neighbour and a
+ *  		halving is never undone. Only the count of additions
+ *  		towards the next reset may be off by a few.
+ */
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+public class FrequencySketch {
+	// Atomic access to single words of table[]
+	private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+	// Per-row seeds for the hash functions
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+	private static final long HALVE_MASK = 0x7777777777777777L;
+
+	private long[] table = null;
+	private int tableMask;
+	private int sampleSize;
+	private int additions = 0;
+
+	/*
+	 *  Creates a sketch sized for a cache of maxEntries blocks
+	 */
+	public FrequencySketch(int maxEntries)
+	{
+		int words = Integer.highestOneBit(Math.max(16, maxEntries - 1) << 1);
+		table = new long[words];
+		tableMask = words - 1;
+		sampleSize = 10 * Math.max(1, maxEntries);
+	}
+
+	// Records one access of blockId
+	public void increment(int blockId)
+	{
+		boolean added = false;
+		for(int row = 0; row < 4; row++)
+		{
+			long h = hash(blockId, row);
+			int word = (int)(h >>> 32) & tableMask;
+			int shift = (int)((h >>> 8) & 15) << 2;
+			added |= incrementAt(word, shift);
+		}
+		if(added && ++additions >= sampleSize)
+		{
+			reset();
+		}
+	}
+
+	// Returns estimated recent access count of blockId (0..15)
+	public int frequency(int blockId)
+	{
+		int min = 15;
+		for(int row = 0; row < 4; row++)
+		{
+			long h = hash(blockId, row);
+			int word = (int)(h >>> 32) & tableMask;
+			int shift = (int)((h >>> 8) & 15) << 2;
+			min = Math.min(min, (int)((table[word] >>> shift) & 15));
+		}
+		return min;
+	}
+
+	/*
+	 *  Adds one to the counter at shift in word unless it is
+	 *  saturated. Retries if another thread changed the word
+	 *  in between. Returns false if the counter was at 15.
+	 */
+	private boolean incrementAt(int word, int shift)
+	{
+		while(true)
+		{
+			long old = (long)WORD.getVolatile(table, word);
+			if(((old >>> shift) & 15) == 15)
+			{
+				return false;
+			}
+			if(WORD.compareAndSet(table, word, old, old + (1L << shift)))
+			{
+				return true;
+			}
+		}
+	}
+
+	// Halves every counter (aging)
+	private void reset()
+	{
+		for(int i = 0; i < table.length; i++)
+		{
+			long old;
+			do
+			{
+				old = (long)WORD.getVolatile(table, i);
+			} while(!WORD.compareAndSet(table, i, old, (old >>> 1) & HALVE_MASK));
+		}
+		additions = additions / 2;
+	}
+
+	private long hash(int blockId, int row)
+	{
+		long h = (blockId + SEEDS[row]) * SEEDS[(row + 1) & 3];
+		return h ^ (h >>> 29);
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  FrameStore keeping every frame in a single heap
+ *  byte[] slab instead of one array per frame.
+ */
+
+import java.nio.ByteBuffer;
+
+public class HeapFrameStore implements FrameStore {
+	private byte[] slab = null;
+	private int blockSize;
+	private int frameCount;
+
+	public HeapFrameStore(int blkSize, int frames)
+	{
+		long bytes = (long)blkSize * frames;
+		if(blkSize < 1 || frames < 1 || bytes > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Error in HeapFrameStore(int blockSize, int frames): "
+					+ "parameters must be > 0 and fit in one array");
+		}
+		blockSize = blkSize;
+		frameCount = frames;
+		slab = new byte[(int)bytes];
+	}
+
+	public void read(int frame, int offset, byte dst[], int dstOffset, int length)
+	{
+		System.arraycopy(slab, frame * blockSize + offset, dst, dstOffset, length);
+	}
+
+	public void write(int frame, int offset, byte src[], int srcOffset, int length)
+	{
+		System.arraycopy(src, srcOffset, slab, frame * blockSize + offset, length);
+	}
+
+	public ByteBuffer view(int frame)
+	{
+		return ByteBuffer.wrap(slab, frame * blockSize, blockSize).slice();
+	}
+
+	public byte get(int frame, int offset)
+	{
+		return slab[frame * blockSize + offset];
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  HeapPressureMonitor shrinks a cache when the Java heap
+ *  runs short, trading hit ratio for memory instead of
+ *  running out of it. It sets a usage threshold on every
+ *  heap memory pool and listens for the JVM's notification
+ *  that a pool crossed it.
+ *
+ *  Collection usage (what is left right after a GC) is used
+ *  where a pool supports it, since plain usage crosses any
+ *  threshold whenever garbage piles up between collections.
+ *
+ *  Frames kept off the heap (offHeap) are not freed by a
+ *  shrink, so Kernel does not start a monitor for them.
+ *
+ *  Only one monitor listens at a time. start() removes the
+ *  listener of the previous one, so the cache of an earlier
+ *  BOOT is neither shrunk nor kept alive by the JVM.
+ *
+ *  NOTE:	A shrink copies the blocks it keeps into a new, smaller
+ *  		frame table before the old one can be collected, so heap
+ *  		use briefly rises by the new table's size (half the old
+ *  		one with the default heapShrinkPercent) before it falls.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+public class HeapPressureMonitor implements NotificationListener {
+	// Monitor listening now, null if none
+	private static HeapPressureMonitor current = null;
+
+	private BlockCache cache = null;
+	private int shrinkPercent;
+	private int minFrames;			// At least one per shard
+
+	// Watches the heap for cache, replacing any earlier monitor
+	public static synchronized HeapPressureMonitor start(BlockCache cache, CacheOptions options)
+	{
+		stop();
+		current = new HeapPressureMonitor(cache, options);
+		return current;
+	}
+
+	// Stops the current monitor, if any
+	public static synchronized void stop()
+	{
+		if(current == null)
+		{
+			return;
+		}
+		try
+		{
+			((NotificationEmitter)ManagementFactory.getMemoryMXBean()).removeNotificationListener(current);
+		}
+		catch(ListenerNotFoundException ex)
+		{
+			// Already gone
+		}
+		current = null;
+	}
+
+	private HeapPressureMonitor(BlockCache cache, CacheOptions options)
+	{
+		this.cache = cache;
+		shrinkPercent = options.heapShrinkPercent;
+		minFrames = Math.max(Math.max(1, options.shards), options.heapMinFrames);
+
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			long max = pool.getUsage().getMax();
+			if(pool.getType() != MemoryType.HEAP || max <= 0)
+			{
+				continue;
+			}
+			long threshold = max * options.heapThresholdPercent / 100;
+			if(pool.isCollectionUsageThresholdSupported())
+			{
+				pool.setCollectionUsageThreshold(threshold);
+			}
+			else if(pool.isUsageThresholdSupported())
+			{
+				pool.setUsageThreshold(threshold);
+			}
+		}
+		// The memory MXBean delivers the notifications of every pool
+		((NotificationEmitter)ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+	}
+
+	// Runs on a JMX notification thread
+	public void handleNotification(Notification notification, Object handback)
+	{
+		String type = notification.getType();
+		if(!type.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)
+				&& !type.equals(MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED))
+		{
+			return;
+		}
+		int frames = cache.getTableSize();
+		int target = Math.max(minFrames, frames * shrinkPercent / 100);
+		if(target < frames)
+		{
+			SysLib.cerr("Heap is short, shrinking cache from " + frames + " to " + target + " frames \n");
+			// Nothing above this thread would catch a failure
+			try
+			{
+				if(!cache.resize(target))
+				{
+					SysLib.cerr("Error in HeapPressureMonitor: cache could not shrink. \n");
+				}
+			}
+			catch(RuntimeException ex)
+			{
+				SysLib.cerr("Error in HeapPressureMonitor: " + ex + " \n");
+			}
+		}
+	}
+}
@@ -1,9 +1,11 @@
 import java.io.BufferedReader;
+import java.io.File;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import javax.management.JMException;
 
 public class Kernel
 {
@@ -39,6 +41,33 @@ public final static int SEEK    = 17; // SysLib.seek( int fd, int offest,
 public final static int FORMAT  = 18; // SysLib.format( int files )
 public final static int DELETE  = 19; // SysLib.delete( String fileName )
 
+// Vectored cache system calls. args is either one byte[] holding
+// consecutive blocks starting at block param, or
+// Object[] { int blockIds[], byte buffers[][] } (param unused)
+public final static int CREADV  = 20; // SysLib.creadv( int blk, byte b[] )
+public final static int CWRITEV = 21; // SysLib.cwritev( int blk, byte b[] )
+
+// Asynchronous cache system calls. args is Object[] { byte b[], null };
+// the kernel stores a CompletableFuture<Boolean> in args[1] that
+// completes when the block has been read or written.
+public final static int CREADASYNC  = 22; // SysLib.creadAsync( int blk, Object args[] )
+public final static int CWRITEASYNC = 23; // SysLib.cwriteAsync( int blk, Object args[] )
+
+// Byte-range cache system calls. args is Object[] { Integer offset, byte b[] };
+// b.length bytes at offset within block param are read or written.
+public final static int CREADPART  = 24; // SysLib.creadPart( int blk, int off, byte b[] )
+public final static int CWRITEPART = 25; // SysLib.cwritePart( int blk, int off, byte b[] )
+
+// Changes the number of cache frames to param, keeping cached blocks
+public final static int CRESIZE    = 26; // SysLib.cresize( int frames )
+
+// Vectored raw disk I/O. args is Object[] { int blockIds[], byte buffers[][] }
+public final static int RAWREADV   = 27; // SysLib.rawreadv( int blks[], byte b[][] )
+public final static int RAWWRITEV  = 28; // SysLib.rawwritev( int blks[], byte b[][] )
+
+// Appends the cache's counters and latencies to the StringBuffer args
+public final static int CSTATS     = 29; // SysLib.cstats( StringBuffer s )
+
 // Predefined file descriptors
 public final static int STDIN  = 0;
 public final static int STDOUT = 1;
@@ -51,14 +80,13 @@ public final static int ERROR = -1;
 // System thread references
 private static Scheduler scheduler;
 private static Disk disk;
-private static Cache cache;
+private static SimulatedDisk simulatedDisk; // null when the disk image is mapped
+private static BlockDevice device; // serves RAWREAD, RAWWRITE and SYNC
+private static BlockCache cache;
+private static File cacheSnapshot; // null unless warm restarts are on
 
 // Synchronized Queues
 private static SyncQueue waitQueue;  // for threads to wait for their child
-private static SyncQueue ioQueue;    // I/O queue
-
-private final static int COND_DISK_REQ = 1; // wait condition
-private final static int COND_DISK_FIN = 2; // wait condition
 
 // Standard input
 private static BufferedReader input
@@ -75,16 +103,105 @@ case INTERRUPT_SOFTWARE: // System calls
     scheduler = new Scheduler( );
     scheduler.start( );
 
-    // instantiate and start a disk
-    disk = new Disk( 1000 );
-    disk.start( );
+    // instantiate and start a disk, or map the disk image
+    // when -Dthreados.disk=mapped, or stripe the blocks over
+    // several mapped images when -Dthreados.disk=striped, or
+    // copy them to several when -Dthreados.disk=mirrored
+    int diskBlocks = Integer.getInteger( "threados.disk.blocks", 1000 );
+    String diskType = System.getProperty( "threados.disk", "simulated" );
+    String diskImage = System.getProperty( "threados.disk.image", "DISK" );
+    long diskDeadline = Long.getLong( "threados.disk.deadline", 0 );
+    if ( diskType.equals( "mapped" ) ) {
+        try {
+            device = new MappedDisk( diskImage, Disk.blockSize, diskBlocks );
+        } catch ( IOException e ) {
+            System.out.println( e );
+            return ERROR;
+        }
+    } else if ( diskType.equals( "striped" ) ) {
+        // member i is the image file DISK.i with its own queue
+        int members = Integer.getInteger( "threados.disk.members", 2 );
+        int stripeUnit = Integer.getInteger( "threados.disk.stripe", 8 );
+        int rows = ( diskBlocks + members * stripeUnit - 1 ) / ( members * stripeUnit );
+        DiskQueue[] queues = new DiskQueue[members];
+        try {
+            for ( int i = 0; i < members; i++ )
+                queues[i] = new DiskQueue( new MappedDisk( diskImage + "." + i,
+                                   Disk.blockSize, rows * stripeUnit ), diskDeadline );
+        } catch ( IOException e ) {
+            System.out.println( e );
+            return ERROR;
+        }
+        device = new StripedDevice( queues, stripeUnit );
+    } else if ( diskType.equals( "mirrored" ) ) {
+        // member i is a full copy in DISK.i with its own queue;
+        // slow reads are hedged past -Dthreados.disk.hedge percentile.
+        // a new or grown image is resynced from a current one
+        int members = Integer.getInteger( "threados.disk.members", 2 );
+        int hedge = Integer.getInteger( "threados.disk.hedge", 95 );
+        DiskQueue[] queues = new DiskQueue[members];
+        boolean[] stale = new boolean[members];
+        try {
+            for ( int i = 0; i < members; i++ ) {
+                MappedDisk image = new MappedDisk( diskImage + "." + i,
+                                                   Disk.blockSize, diskBlocks );
+                stale[i] = image.wasExtended( );
+                queues[i] = new DiskQueue( image, diskDeadline );
+            }
+            device = new MirroredDevice( queues, stale, hedge );
+        } catch ( IOException e ) {
+            System.out.println( e );
+            return ERROR;
+        }
+    } else {
+        disk = new Disk( diskBlocks );
+        disk.start( );
+        simulatedDisk = new SimulatedDisk( disk, diskBlocks );
+        device = simulatedDisk;
+    }
+
+    // with -Dthreados.disk.queue=clook, many requests may be
+    // outstanding and are served in C-LOOK order
+    // (striped and mirrored members always have their own queues)
+    if ( System.getProperty( "threados.disk.queue", "none" ).equals( "clook" )
+         && !diskType.equals( "striped" ) && !diskType.equals( "mirrored" ) )
+        device = new DiskQueue( device, diskDeadline );
 
-    // instantiate a cache memory
-    cache = new Cache( disk.blockSize, 10 );
+    // instantiate a cache memory, configured by the
+    // -Dthreados.cache.* system properties (see CacheOptions)
+    CacheOptions cacheOptions = CacheOptions.fromSystemProperties( );
+    if ( cacheOptions.shards > 1 )
+        cache = new ShardedCache( Disk.blockSize, cacheOptions.frames, cacheOptions );
+    else
+        cache = new Cache( Disk.blockSize, cacheOptions.frames, cacheOptions );
+    // off-heap frames don't shrink the heap, so only heap ones are
+    // watched. Either way the last BOOT's monitor lets go of its cache.
+    if ( cacheOptions.heapPressure && !cacheOptions.offHeap )
+        HeapPressureMonitor.start( cache, cacheOptions );
+    else
+        HeapPressureMonitor.stop( );
+
+    // publish the cache stats over JMX; the cache works without it
+    try {
+        CacheMonitor.register( cache );
+    } catch ( JMException e ) {
+        System.out.println( e );
+    }
 
     // instantiate synchronized queues
-    ioQueue = new SyncQueue( );
     waitQueue = new SyncQueue( scheduler.getMaxThreads( ) );
+
+    // warm the cache from the last snapshot. Its reads go through
+    // RAWREAD, so they run on their own thread once BOOT returns.
+    if ( cacheOptions.snapshotFile != null ) {
+        cacheSnapshot = new File( cacheOptions.snapshotFile );
+        Thread warmer = new Thread( ( ) ->
+            CacheSnapshot.restore( cache, cacheSnapshot ), "CacheWarmer" );
+        warmer.setDaemon( true );
+        warmer.start( );
+        Runtime.getRuntime( ).addShutdownHook( new Thread( ( ) ->
+            CacheSnapshot.save( cache, cacheSnapshot ) ) );
+    }
     return OK;
     case EXEC:
     return sysExec( ( String[] )args );
@@ -112,40 +229,31 @@ case INTERRUPT_SOFTWARE: // System calls
     scheduler.sleepThread( param ); // param = milliseconds
     return OK;
     case RAWREAD: // read a block of data from disk
-    while ( disk.read( param, ( byte[] )args ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_REQ );
-    while ( disk.testAndResetReady( ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_FIN );
-
-    // it's possible that a thread waiting to make a request was released by the disk,
-    // but then promptly looped back, found the buffer wasn't available for sending (bufferReady == true)
-    // and then went back to sleep
-    Kernel.ioQueue.dequeueAndWakeup(Kernel.COND_DISK_REQ);
-
-    // now you can access data in buffer
-    return OK;
+    // the caller parks until its own request is done
+    // (see SimulatedDisk), so now you can access data in buffer
+    return device.read( param, ( byte[] )args ) ? OK : ERROR;
     case RAWWRITE: // write a block of data to disk
-    while ( disk.write( param, ( byte[] )args ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_REQ );
-    while ( disk.testAndResetReady( ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_FIN );
-    // it's possible that a thread waiting to make a request was released by the disk,
-    // but then promptly looped back, found the buffer wasn't available for sending (bufferReady == true)
-    // and then went back to sleep
-    Kernel.ioQueue.dequeueAndWakeup(Kernel.COND_DISK_REQ);
-
-    return OK;
+    boolean written = device.write( param, ( byte[] )args );
+    rawWritten( param );
+    return written ? OK : ERROR;
     case SYNC:     // synchronize disk data to a real file
-    while ( disk.sync( ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_REQ );
-    while ( disk.testAndResetReady( ) == false )
-        ioQueue.enqueueAndSleep( COND_DISK_FIN );
-
-    // it's possible that a thread waiting to make a request was released by the disk,
-    // but then promptly looped back, found the buffer wasn't available for sending (bufferReady == true)
-    // and then went back to sleep
-    Kernel.ioQueue.dequeueAndWakeup(Kernel.COND_DISK_REQ);
-    return OK;
+    return device.sync( ) ? OK : ERROR;
+    case RAWREADV:  // many blocks, issued to the device together
+    case RAWWRITEV:
+    if ( !( args instanceof Object[] ) || ( ( Object[] )args ).length != 2
+         || !( ( ( Object[] )args )[0] instanceof int[] )
+         || !( ( ( Object[] )args )[1] instanceof byte[][] ) )
+        return ERROR;
+    int[] rawBlocks = ( int[] )( ( Object[] )args )[0];
+    byte[][] rawBuffers = ( byte[][] )( ( Object[] )args )[1];
+    if ( rawBlocks.length != rawBuffers.length )
+        return ERROR;
+    if ( cmd == RAWREADV )
+        return device.readv( rawBlocks, rawBuffers ) ? OK : ERROR;
+    boolean allWritten = device.writev( rawBlocks, rawBuffers );
+    for ( int i = 0; i < rawBlocks.length; i++ )
+        rawWritten( rawBlocks[i] );
+    return allWritten ? OK : ERROR;
     case READ:
     switch ( param ) {
     case STDIN:
@@ -192,10 +300,51 @@ case INTERRUPT_SOFTWARE: // System calls
     return cache.write( param, ( byte[] )args ) ? OK : ERROR;
     case CSYNC:   // to be implemented in assignment 4
     cache.sync( );
+    if ( cacheSnapshot != null )
+        CacheSnapshot.save( cache, cacheSnapshot );
     return OK;
     case CFLUSH:  // to be implemented in assignment 4
     cache.flush( );
     return OK;
+    case CREADV:  // many blocks under one cache lock
+    return sysCacheVector( false, param, args );
+    case CWRITEV:
+    return sysCacheVector( true, param, args );
+    case CREADASYNC:  // returns at once, the future tracks the I/O
+    case CWRITEASYNC:
+    if ( !( args instanceof Object[] ) || ( ( Object[] )args ).length != 2
+         || !( ( ( Object[] )args )[0] instanceof byte[] ) )
+        return ERROR;
+    Object[] request = ( Object[] )args;
+    byte[] block = ( byte[] )request[0];
+    request[1] = ( cmd == CREADASYNC ) ? cache.readAsync( param, block )
+                                        : cache.writeAsync( param, block );
+    return OK;
+    case CREADPART:   // only the requested bytes are copied
+    case CWRITEPART:
+    if ( !( args instanceof Object[] ) || ( ( Object[] )args ).length != 2
+         || !( ( ( Object[] )args )[0] instanceof Integer )
+         || !( ( ( Object[] )args )[1] instanceof byte[] ) )
+        return ERROR;
+    int offset = ( Integer )( ( Object[] )args )[0];
+    byte[] bytes = ( byte[] )( ( Object[] )args )[1];
+    if ( offset < 0 || offset + bytes.length > Disk.blockSize )
+        return ERROR;
+    if ( cmd == CREADPART )
+        return cache.readPartial( param, offset, bytes ) ? OK : ERROR;
+    return cache.writePartial( param, offset, bytes ) ? OK : ERROR;
+    case CRESIZE:
+    try {
+        return cache.resize( param ) ? OK : ERROR;
+    } catch ( IllegalArgumentException e ) {
+        // too few frames for the cache (or its shards)
+        return ERROR;
+    }
+    case CSTATS:
+    if ( !( args instanceof StringBuffer ) )
+        return ERROR;
+    cache.getStats( ).report( ( StringBuffer )args );
+    return OK;
     case OPEN:    // to be implemented in project
     return OK;
     case CLOSE:   // to be implemented in project
@@ -211,12 +360,10 @@ case INTERRUPT_SOFTWARE: // System calls
     }
     return ERROR;
 case INTERRUPT_DISK: // Disk interrupts
-    // wake up the thread waiting for a service completion
-    ioQueue.dequeueAndWakeup( COND_DISK_FIN );
-
-    // wake up the thread waiting for a request acceptance
-    //    ioQueue.dequeueAndWakeup(COND_DISK_REQ);
-
+    // wake up only the thread whose request just completed;
+    // it hands the disk to the next waiter itself
+    if ( simulatedDisk != null )
+        simulatedDisk.diskInterrupt( );
     return OK;
 case INTERRUPT_IO:   // other I/O interrupts (not implemented)
     return OK;
@@ -224,6 +371,50 @@ case INTERRUPT_IO:   // other I/O interrupts (not implemented)
 return OK;
 }
 
+// A raw write may change a block the cache thinks it knows
+private static void rawWritten( int blockId ) {
+if ( cache != null )
+    cache.rawWritten( blockId );
+}
+
+// Serving CREADV and CWRITEV in either argument form
+private static int sysCacheVector( boolean write, int param, Object args ) {
+if ( args instanceof Object[] ) {
+    // list form: Object[] { int blockIds[], byte buffers[][] }
+    Object[] lists = ( Object[] )args;
+    if ( lists.length != 2 || !( lists[0] instanceof int[] )
+         || !( lists[1] instanceof byte[][] ) )
+    return ERROR;
+    int blockIds[] = ( int[] )lists[0];
+    byte buffers[][] = ( byte[][] )lists[1];
+    if ( write )
+    return cache.writev( blockIds, buffers ) ? OK : ERROR;
+    return cache.readv( blockIds, buffers ) ? OK : ERROR;
+}
+
+// range form: blocks param, param + 1, ... packed in one byte[]
+if ( !( args instanceof byte[] ) || param < 0 )
+    return ERROR;
+byte buffer[] = ( byte[] )args;
+int blockSize = Disk.blockSize;
+if ( buffer.length == 0 || buffer.length % blockSize != 0 )
+    return ERROR;
+int count = buffer.length / blockSize;
+int blockIds[] = new int[count];
+byte buffers[][] = new byte[count][blockSize];
+for ( int i = 0; i < count; i++ ) {
+    blockIds[i] = param + i;
+    if ( write )
+    System.arraycopy( buffer, i * blockSize, buffers[i], 0, blockSize );
+}
+if ( write )
+    return cache.writev( blockIds, buffers ) ? OK : ERROR;
+boolean success = cache.readv( blockIds, buffers );
+for ( int i = 0; i < count; i++ )
+    System.arraycopy( buffers[i], 0, buffer, i * blockSize, blockSize );
+return success ? OK : ERROR;
+}
+
 // Spawning a new thread
 private static int sysExec( String args[] ) {
 String thrName = args[0]; // args[0] has a thread name
@@ -0,0 +1,112 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  LatencyHistogram counts durations in log-linear buckets:
+ *  every power of two is split into SUB_BUCKETS equal parts,
+ *  so any value is placed within 1/SUB_BUCKETS (12.5%) of
+ *  its true size from nanoseconds up to hours, in a few
+ *  hundred counters.
+ *
+ *  	value < 8			bucket = value
+ *  	2^e <= value < 2^(e+1)	bucket = (e - 2) * 8 + the value's
+ *  							next 3 bits after the top one
+ *
+ *  Recording is one atomic add and never blocks; readers
+ *  see a count that may be a few records behind.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;	// Up to 2^63 - 1
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	// Adds one duration in nanoseconds; negative ones count as 0
+	public void record(long nanos)
+	{
+		counts.getAndIncrement(bucketOf(Math.max(0, nanos)));
+	}
+
+	public long getCount()
+	{
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/*
+	 *  Upper bound in nanoseconds of the percent-th percentile
+	 *  (0 to 100), or 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percent)
+	{
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(total * percent / 100.0));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += snapshot[i];
+			if(seen >= rank)
+			{
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+
+	// Adds every count of this histogram to other
+	public void addTo(LatencyHistogram other)
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			long n = counts.get(i);
+			if(n != 0)
+			{
+				other.counts.getAndAdd(i, n);
+			}
+		}
+	}
+
+	// ------------------ helpers ------------------
+
+	private static int bucketOf(long value)
+	{
+		if(value < SUB_BUCKETS)
+		{
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// Largest value that falls in bucket
+	private static long upperBound(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+		return lower + (1L << (exponent - SUB_BITS)) - 1;
+	}
+}
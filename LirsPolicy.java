@@ -0,0 +1,340 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Low Inter-reference Recency Set replacement (Jiang & Zhang).
+ *  Blocks are split into LIR blocks (hot, always resident) and
+ *  HIR blocks (resident in a small queue or only remembered).
+ *
+ *  	Stack S:	recency order of LIR blocks and recently seen
+ *  				HIR blocks, including non-resident ones. Its
+ *  				bottom is always a LIR block.
+ *  	Queue Q:	resident HIR blocks, oldest first. Victims
+ *  				always come from the front of Q.
+ *
+ *  A block becomes LIR only when it is touched again while
+ *  still in S, i.e. its reuse distance beats the coldest LIR
+ *  block. A one-time scan therefore only cycles through the
+ *  few Q frames and never pushes the hot LIR set out.
+ */
+
+import java.util.HashMap;
+
+public class LirsPolicy implements ReplacementPolicy {
+	// Status of a block
+	private static final int LIR = 0;
+	private static final int HIR_RESIDENT = 1;
+	private static final int HIR_NONRESIDENT = 2;
+
+	// Node in S and/or Q
+	private class Node
+	{
+		private int blockId;
+		private int frame = -1;
+		private int status;
+		private Node sUp, sDown;		// Towards top / bottom of S
+		private Node qNext, qPrev;		// Towards back / front of Q
+		private boolean inS = false;
+		private boolean inQ = false;
+	}
+
+	private HashMap<Integer, Node> nodes = new HashMap<Integer, Node>();
+	private Node sTop = null, sBottom = null;
+	private Node qFront = null, qBack = null;
+
+	private int lirLimit;				// Frames reserved for LIR blocks
+	private int lirCount = 0;
+	private int nonResidentLimit;		// History kept for non-resident blocks
+	private int nonResidentCount = 0;
+
+	public LirsPolicy(FrameTable frames)
+	{
+		int capacity = frames.getFrameCount();
+		// About 1% of the frames hold HIR blocks, at least one
+		int hirFrames = Math.max(1, capacity / 100);
+		lirLimit = Math.max(1, capacity - hirFrames);
+		nonResidentLimit = 2 * capacity;
+	}
+
+	public void onHit(int frame, int blockId)
+	{
+		Node node = nodes.get(blockId);
+		if(node == null)
+		{
+			return;
+		}
+		if(node.status == LIR)
+		{
+			boolean wasBottom = (node == sBottom);
+			moveToTop(node);
+			if(wasBottom)
+			{
+				prune();
+			}
+		}
+		else if(node.inS)
+		{
+			// Reused within the LIR recency range: promote
+			removeFromQ(node);
+			node.status = LIR;
+			lirCount++;
+			moveToTop(node);
+			demoteBottomLir();
+		}
+		else
+		{
+			// Still HIR, but freshly used
+			moveToTop(node);
+			removeFromQ(node);
+			addToQ(node);
+		}
+	}
+
+	public void onFill(int frame, int blockId)
+	{
+		Node node = nodes.get(blockId);
+		if(node == null)
+		{
+			node = new Node();
+			node.blockId = blockId;
+			nodes.put(blockId, node);
+		}
+		else if(node.status == HIR_NONRESIDENT)
+		{
+			nonResidentCount--;
+		}
+		node.frame = frame;
+
+		if(lirCount < lirLimit)
+		{
+			// Cache still warming up: everything is LIR
+			node.status = LIR;
+			lirCount++;
+			moveToTop(node);
+		}
+		else if(node.inS)
+		{
+			// Non-resident HIR block seen again within S
+			node.status = LIR;
+			lirCount++;
+			moveToTop(node);
+			demoteBottomLir();
+		}
+		else
+		{
+			node.status = HIR_RESIDENT;
+			moveToTop(node);
+			addToQ(node);
+		}
+	}
+
+	public void onEvict(int frame, int blockId)
+	{
+		Node node = nodes.get(blockId);
+		if(node == null)
+		{
+			return;
+		}
+		removeFromQ(node);
+		node.frame = -1;
+		if(node.status == LIR)
+		{
+			// Only happens when Q had nothing evictable
+			lirCount--;
+			forget(node);
+			prune();
+		}
+		else if(node.inS)
+		{
+			// Keep the history so a quick reuse promotes it
+			node.status = HIR_NONRESIDENT;
+			nonResidentCount++;
+			trimHistory();
+		}
+		else
+		{
+			forget(node);
+		}
+	}
+
+	public void onInvalidate(int frame, int blockId)
+	{
+		Node node = nodes.get(blockId);
+		if(node == null)
+		{
+			return;
+		}
+		if(node.status == LIR)
+		{
+			lirCount--;
+		}
+		removeFromQ(node);
+		forget(node);
+		prune();
+	}
+
+	// Front of Q, or the coldest LIR block if Q is empty
+	public int selectVictim(int blockId)
+	{
+		if(qFront != null)
+		{
+			return qFront.frame;
+		}
+		return (sBottom != null) ? sBottom.frame : -1;
+	}
+
+	// Hits change S and Q, so they go through the lock
+	public boolean usesReferenceBits()
+	{
+		return false;
+	}
+
+	// Only resident HIR blocks (in Q) are cold, never a LIR block
+	public boolean isCold(int frame, int blockId)
+	{
+		Node node = nodes.get(blockId);
+		return node != null && node.status == HIR_RESIDENT;
+	}
+
+	// ------------------ helpers ------------------
+
+	// Bottom LIR block of S becomes a resident HIR block
+	private void demoteBottomLir()
+	{
+		if(lirCount <= lirLimit || sBottom == null)
+		{
+			return;
+		}
+		Node bottom = sBottom;
+		removeFromS(bottom);
+		bottom.status = HIR_RESIDENT;
+		lirCount--;
+		addToQ(bottom);
+		prune();
+	}
+
+	// Removes HIR blocks from the bottom of S until a LIR block is there
+	private void prune()
+	{
+		while(sBottom != null && sBottom.status != LIR)
+		{
+			Node bottom = sBottom;
+			removeFromS(bottom);
+			if(bottom.status == HIR_NONRESIDENT)
+			{
+				nonResidentCount--;
+				nodes.remove(bottom.blockId);
+			}
+		}
+	}
+
+	// Drops the oldest non-resident history above the limit
+	private void trimHistory()
+	{
+		Node node = sBottom;
+		while(nonResidentCount > nonResidentLimit && node != null)
+		{
+			Node up = node.sUp;
+			if(node.status == HIR_NONRESIDENT)
+			{
+				nonResidentCount--;
+				forget(node);
+			}
+			node = up;
+		}
+	}
+
+	private void forget(Node node)
+	{
+		removeFromS(node);
+		removeFromQ(node);
+		nodes.remove(node.blockId);
+	}
+
+	private void moveToTop(Node node)
+	{
+		removeFromS(node);
+		node.sDown = sTop;
+		node.sUp = null;
+		if(sTop != null)
+		{
+			sTop.sUp = node;
+		}
+		sTop = node;
+		if(sBottom == null)
+		{
+			sBottom = node;
+		}
+		node.inS = true;
+	}
+
+	private void removeFromS(Node node)
+	{
+		if(!node.inS)
+		{
+			return;
+		}
+		if(node.sUp != null)
+		{
+			node.sUp.sDown = node.sDown;
+		}
+		else
+		{
+			sTop = node.sDown;
+		}
+		if(node.sDown != null)
+		{
+			node.sDown.sUp = node.sUp;
+		}
+		else
+		{
+			sBottom = node.sUp;
+		}
+		node.sUp = null;
+		node.sDown = null;
+		node.inS = false;
+	}
+
+	private void addToQ(Node node)
+	{
+		node.qPrev = qBack;
+		node.qNext = null;
+		if(qBack != null)
+		{
+			qBack.qNext = node;
+		}
+		qBack = node;
+		if(qFront == null)
+		{
+			qFront = node;
+		}
+		node.inQ = true;
+	}
+
+	private void removeFromQ(Node node)
+	{
+		if(!node.inQ)
+		{
+			return;
+		}
+		if(node.qPrev != null)
+		{
+			node.qPrev.qNext = node.qNext;
+		}
+		else
+		{
+			qFront = node.qNext;
+		}
+		if(node.qNext != null)
+		{
+			node.qNext.qPrev = node.qPrev;
+		}
+		else
+		{
+			qBack = node.qPrev;
+		}
+		node.qPrev = null;
+		node.qNext = null;
+		node.inQ = false;
+	}
+}
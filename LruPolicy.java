@@ -0,0 +1,53 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Least recently used replacement. Every hit moves the
+ *  frame to the front of a list, the victim is the tail.
+ */
+
+public class LruPolicy implements ReplacementPolicy {
+	private FrameList recency = null;
+
+	public LruPolicy(FrameTable frames)
+	{
+		recency = new FrameList(frames.getFrameCount());
+	}
+
+	public void onHit(int frame, int blockId)
+	{
+		recency.pushFront(frame);
+	}
+
+	public void onFill(int frame, int blockId)
+	{
+		recency.pushFront(frame);
+	}
+
+	public void onEvict(int frame, int blockId)
+	{
+		recency.remove(frame);
+	}
+
+	public void onInvalidate(int frame, int blockId)
+	{
+		recency.remove(frame);
+	}
+
+	public int selectVictim(int blockId)
+	{
+		return recency.tail();
+	}
+
+	// Every hit has to reorder the list under the lock
+	public boolean usesReferenceBits()
+	{
+		return false;
+	}
+
+	// No protected set; the reference bit tells a used block apart
+	public boolean isCold(int frame, int blockId)
+	{
+		return true;
+	}
+}
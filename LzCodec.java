@@ -0,0 +1,198 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  LzCodec is a small LZ77 compressor using the LZ4 block
+ *  format, for blocks kept in the CompressedTier. It favours
+ *  speed over ratio: one hash probe per position and no
+ *  entropy coding, so decompressing is little more than a
+ *  few array copies.
+ *
+ *  A compressed block is a list of sequences:
+ *
+ *  	token		high 4 bits literal count, low 4 bits match length - 4
+ *  				(15 means more length bytes follow, each added
+ *  				until one is below 255)
+ *  	literals	copied as they are
+ *  	offset		2 bytes, little endian: how far back the match starts
+ *
+ *  The last sequence has literals only. As in LZ4, the last
+ *  LAST_LITERALS bytes are always literals and no match
+ *  starts in the last MATCH_LIMIT bytes.
+ *
+ *  NOTE:	An instance keeps its hash table between calls and
+ *  		is not thread safe.
+ */
+
+import java.util.Arrays;
+
+public class LzCodec {
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MATCH_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int HASH_BITS = 12;
+
+	// base + last position each hashed 4-byte sequence was seen at.
+	// base moves past every call, so older entries read as
+	// negative positions and the table never needs clearing.
+	private int[] table = new int[1 << HASH_BITS];
+	private int base = 1;
+
+	// Largest compressed size of length bytes
+	public static int maxCompressedLength(int length)
+	{
+		return length + length / 255 + 16;
+	}
+
+	/*
+	 *  Compresses src[0 .. length) into dst, which must hold
+	 *  maxCompressedLength(length) bytes. Returns the number
+	 *  of bytes written.
+	 */
+	public int compress(byte src[], int length, byte dst[])
+	{
+		if(base > Integer.MAX_VALUE - length - 1)
+		{
+			Arrays.fill(table, 0);
+			base = 1;
+		}
+		int out = 0;
+		int anchor = 0;		// First byte not yet emitted
+		int i = 0;
+		while(i < length - MATCH_LIMIT)
+		{
+			int sequence = readInt(src, i);
+			int h = (sequence * -1640531535) >>> (32 - HASH_BITS);
+			int ref = table[h] - base;
+			table[h] = base + i;
+			if(ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence)
+			{
+				i++;
+				continue;
+			}
+
+			int matchLength = MIN_MATCH;
+			while(i + matchLength < length - LAST_LITERALS && src[ref + matchLength] == src[i + matchLength])
+			{
+				matchLength++;
+			}
+			out = writeSequence(src, anchor, i - anchor, dst, out, i - ref, matchLength);
+			i += matchLength;
+			anchor = i;
+		}
+		base += length + 1;
+		// Whatever is left goes out as literals
+		return writeSequence(src, anchor, length - anchor, dst, out, 0, 0);
+	}
+
+	/*
+	 *  Decompresses src[0 .. length) into dst. Returns the
+	 *  number of bytes written.
+	 */
+	public int decompress(byte src[], int length, byte dst[])
+	{
+		int in = 0;
+		int out = 0;
+		while(in < length)
+		{
+			int token = src[in++] & 0xFF;
+
+			int literals = token >>> 4;
+			if(literals == 15)
+			{
+				int b;
+				do
+				{
+					b = src[in++] & 0xFF;
+					literals += b;
+				} while(b == 255);
+			}
+			System.arraycopy(src, in, dst, out, literals);
+			in += literals;
+			out += literals;
+			if(in == length)
+			{
+				// Last sequence has no match
+				break;
+			}
+
+			int offset = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+			in += 2;
+			int matchLength = token & 15;
+			if(matchLength == 15)
+			{
+				int b;
+				do
+				{
+					b = src[in++] & 0xFF;
+					matchLength += b;
+				} while(b == 255);
+			}
+			matchLength += MIN_MATCH;
+
+			int from = out - offset;
+			if(offset >= matchLength)
+			{
+				System.arraycopy(dst, from, dst, out, matchLength);
+				out += matchLength;
+			}
+			else
+			{
+				// Byte by byte: the match overlaps what it produces
+				for(int k = 0; k < matchLength; k++)
+				{
+					dst[out++] = dst[from + k];
+				}
+			}
+		}
+		return out;
+	}
+
+	// ------------------ helpers ------------------
+
+	// One sequence; a matchLength of 0 writes literals only
+	private static int writeSequence(byte src[], int start, int literals, byte dst[], int out,
+			int offset, int matchLength)
+	{
+		int tokenAt = out++;
+		int token = Math.min(literals, 15) << 4;
+		if(literals >= 15)
+		{
+			out = writeLength(dst, out, literals - 15);
+		}
+		System.arraycopy(src, start, dst, out, literals);
+		out += literals;
+
+		if(matchLength > 0)
+		{
+			dst[out++] = (byte)offset;
+			dst[out++] = (byte)(offset >>> 8);
+			int extra = matchLength - MIN_MATCH;
+			token |= Math.min(extra, 15);
+			if(extra >= 15)
+			{
+				out = writeLength(dst, out, extra - 15);
+			}
+		}
+		dst[tokenAt] = (byte)token;
+		return out;
+	}
+
+	private static int writeLength(byte dst[], int out, int length)
+	{
+		while(length >= 255)
+		{
+			dst[out++] = (byte)255;
+			length -= 255;
+		}
+		dst[out++] = (byte)length;
+		return out;
+	}
+
+	private static int readInt(byte src[], int i)
+	{
+		return (src[i] & 0xFF) | ((src[i + 1] & 0xFF) << 8)
+				| ((src[i + 2] & 0xFF) << 16) | ((src[i + 3] & 0xFF) << 24);
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  BlockDevice backed by a memory-mapped disk image file,
+ *  laid out like the image the simulated Disk keeps (block
+ *  b at byte b * blockSize). A transfer is a plain copy to
+ *  or from the mapping, with no Disk thread, no ioQueue
+ *  sleep and no context switch. sync() forces the mapping
+ *  to the file.
+ *
+ *  Pages of the image are read in by the OS on first use,
+ *  so booting no longer reads the whole image up front.
+ *
+ *  NOTE:	Only absolute get/put are used, so transfers of
+ *  		different blocks may run concurrently.
+ */
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedDisk implements BlockDevice {
+	private MappedByteBuffer image = null;
+	private int blockSize;
+	private int blockCount;
+	private boolean extended = false;	// Image was created or grown by us
+
+	/*
+	 *  Maps blocks blocks of blkSize bytes of fileName, which
+	 *  is created or extended with zeros if it is too short.
+	 */
+	public MappedDisk(String fileName, int blkSize, int blocks) throws IOException
+	{
+		long bytes = (long)blkSize * blocks;
+		if(blkSize < 1 || blocks < 1 || bytes > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Error in MappedDisk(String fileName, int blockSize, int blocks): "
+					+ "parameters must be > 0 and fit in one mapping");
+		}
+		blockSize = blkSize;
+		blockCount = blocks;
+		try(RandomAccessFile file = new RandomAccessFile(fileName, "rw"))
+		{
+			if(file.length() < bytes)
+			{
+				extended = true;
+				file.setLength(bytes);
+			}
+			// The mapping stays valid after the channel is closed
+			image = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount || buffer.length < blockSize)
+		{
+			return false;
+		}
+		image.get(blockId * blockSize, buffer, 0, blockSize);
+		return true;
+	}
+
+	public boolean write(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount || buffer.length < blockSize)
+		{
+			return false;
+		}
+		image.put(blockId * blockSize, buffer, 0, blockSize);
+		return true;
+	}
+
+	public boolean sync()
+	{
+		image.force();
+		return true;
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	// True if the image was created or extended with zeros, so
+	// it does not hold what was last written to this disk
+	public boolean wasExtended()
+	{
+		return extended;
+	}
+}
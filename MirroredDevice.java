@@ -0,0 +1,293 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  RAID-1: every member device holds a full copy of every
+ *  block. Writes and syncs go to all members; a read goes to
+ *  the member with the fewest outstanding requests.
+ *
+ *  Hedged reads: if a read has not completed after the
+ *  hedgePercentile-th percentile of recent read latencies,
+ *  the same read is sent to a second member and whichever
+ *  copy arrives first is used. A slow or busy member then
+ *  only costs the tail of the reads it was given, not all
+ *  of their latency.
+ *
+ *  A member that is new (or was replaced) holds zeros, not
+ *  the mirror's data, so it is resynced from a current
+ *  member when the device is built, before any read can be
+ *  sent to it.
+ *
+ *  NOTE:	Members are only told apart as new or current;
+ *  		there is no per-member generation. A stale image
+ *  		put back in place of a member goes undetected.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+public class MirroredDevice implements BlockDevice {
+	private static final int SAMPLES = 256;			// Read latencies remembered
+	private static final int MIN_SAMPLES = 64;		// Before the first hedge
+	private static final int RECOMPUTE_EVERY = 64;	// Samples between threshold updates
+	private static final int RESYNC_BATCH = 64;		// Blocks copied per request
+
+	private DiskQueue[] members = null;
+	private int blockCount;
+	private int hedgePercentile;	// 0 = never hedge
+
+	// Ring of recent read latencies in nanoseconds
+	private long[] latencies = new long[SAMPLES];
+	private long sampleCount = 0;		// Long so it never wraps negative
+	private int sampleNext = 0;
+	private volatile long hedgeNanos = 0;	// 0 until MIN_SAMPLES reads were seen
+
+	/*
+	 *  Mirrors blocks over members, which must already hold the
+	 *  same data. hedgePercentile is between 0 and 99; 0 turns
+	 *  hedged reads off.
+	 */
+	public MirroredDevice(DiskQueue[] members, int hedgePercentile)
+	{
+		if(members.length < 1 || hedgePercentile < 0 || hedgePercentile > 99)
+		{
+			throw new IllegalArgumentException("Error in MirroredDevice(DiskQueue[] members, int hedgePercentile): "
+					+ "need at least one member and 0 <= hedgePercentile <= 99");
+		}
+		this.members = members;
+		this.hedgePercentile = hedgePercentile;
+		blockCount = Integer.MAX_VALUE;
+		for(int i = 0; i < members.length; i++)
+		{
+			blockCount = Math.min(blockCount, members[i].getBlockCount());
+		}
+	}
+
+	/*
+	 *  Mirrors blocks over members, first copying every block
+	 *  of the first member not marked stale to each member that
+	 *  is. If all are stale they are new and agree already.
+	 */
+	public MirroredDevice(DiskQueue[] members, boolean stale[], int hedgePercentile) throws IOException
+	{
+		this(members, hedgePercentile);
+		for(int i = 0; i < members.length; i++)
+		{
+			if(!stale[i])
+			{
+				resync(i, stale);
+				break;
+			}
+		}
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		long start = System.nanoTime();
+		int primary = shortestQueue(-1);
+		if(members.length == 1 || hedgePercentile == 0)
+		{
+			boolean success = members[primary].read(blockId, buffer);
+			recordLatency(System.nanoTime() - start);
+			return success;
+		}
+
+		// A losing read may still complete after we return,
+		// so neither copy is read into the caller's buffer
+		byte[] first = new byte[buffer.length];
+		DiskRequest request = members[primary].submit(DiskRequest.READ, blockId, first);
+		long threshold = hedgeNanos;
+		if(threshold == 0 || request.awaitNanos(threshold))
+		{
+			boolean success = request.await();
+			recordLatency(System.nanoTime() - start);
+			System.arraycopy(first, 0, buffer, 0, buffer.length);
+			return success;
+		}
+
+		byte[] second = new byte[buffer.length];
+		DiskRequest hedge = members[shortestQueue(primary)].submit(DiskRequest.READ, blockId, second);
+		// Both requests unpark this thread when they complete
+		while(!request.isDone() && !hedge.isDone())
+		{
+			LockSupport.park(this);
+		}
+		DiskRequest winner = request.isDone() ? request : hedge;
+		DiskRequest loser = (winner == request) ? hedge : request;
+		if(!winner.await())
+		{
+			// Failed copy: fall back on the other member's answer
+			winner = loser;
+			if(!winner.await())
+			{
+				return false;
+			}
+		}
+		recordLatency(System.nanoTime() - start);
+		System.arraycopy((winner == request) ? first : second, 0, buffer, 0, buffer.length);
+		return true;
+	}
+
+	// Waits until every member has the block
+	public boolean write(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		DiskRequest[] requests = new DiskRequest[members.length];
+		for(int i = 0; i < members.length; i++)
+		{
+			requests[i] = members[i].submit(DiskRequest.WRITE, blockId, buffer);
+		}
+		return awaitAll(requests);
+	}
+
+	/*
+	 *  Spreads the batch over the members by queue length. Not
+	 *  hedged: the batch keeps every member busy already.
+	 */
+	public boolean readv(int blockIds[], byte buffers[][])
+	{
+		boolean success = true;
+		DiskRequest[] requests = new DiskRequest[blockIds.length];
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(blockIds[i] < 0 || blockIds[i] >= blockCount)
+			{
+				success = false;
+				continue;
+			}
+			requests[i] = members[shortestQueue(-1)].submit(DiskRequest.READ, blockIds[i], buffers[i]);
+		}
+		return awaitAll(requests) && success;
+	}
+
+	public boolean writev(int blockIds[], byte buffers[][])
+	{
+		boolean success = true;
+		DiskRequest[] requests = new DiskRequest[blockIds.length * members.length];
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(blockIds[i] < 0 || blockIds[i] >= blockCount)
+			{
+				success = false;
+				continue;
+			}
+			for(int m = 0; m < members.length; m++)
+			{
+				requests[i * members.length + m] = members[m].submit(DiskRequest.WRITE, blockIds[i], buffers[i]);
+			}
+		}
+		return awaitAll(requests) && success;
+	}
+
+	// Syncs every member at once
+	public boolean sync()
+	{
+		DiskRequest[] requests = new DiskRequest[members.length];
+		for(int i = 0; i < members.length; i++)
+		{
+			requests[i] = members[i].submit(DiskRequest.SYNC, -1, null);
+		}
+		return awaitAll(requests);
+	}
+
+	public int getBlockSize()
+	{
+		return members[0].getBlockSize();
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	// Copies every block of member source to each stale member
+	private void resync(int source, boolean stale[]) throws IOException
+	{
+		for(int first = 0; first < blockCount; first += RESYNC_BATCH)
+		{
+			int count = Math.min(RESYNC_BATCH, blockCount - first);
+			int[] blockIds = new int[count];
+			byte[][] buffers = new byte[count][getBlockSize()];
+			for(int i = 0; i < count; i++)
+			{
+				blockIds[i] = first + i;
+			}
+			if(!members[source].readv(blockIds, buffers))
+			{
+				throw new IOException("Error in MirroredDevice: resync could not read member " + source);
+			}
+			for(int m = 0; m < members.length; m++)
+			{
+				if(stale[m] && !members[m].writev(blockIds, buffers))
+				{
+					throw new IOException("Error in MirroredDevice: resync could not write member " + m);
+				}
+			}
+		}
+		for(int m = 0; m < members.length; m++)
+		{
+			if(stale[m] && !members[m].sync())
+			{
+				throw new IOException("Error in MirroredDevice: resync could not sync member " + m);
+			}
+		}
+	}
+
+	// Waits for every non-null request; true if all succeeded
+	private boolean awaitAll(DiskRequest requests[])
+	{
+		boolean success = true;
+		for(int i = 0; i < requests.length; i++)
+		{
+			if(requests[i] != null)
+			{
+				success &= requests[i].await();
+			}
+		}
+		return success;
+	}
+
+	// Member with the fewest outstanding requests, other than skip
+	private int shortestQueue(int skip)
+	{
+		int best = -1;
+		int bestLength = Integer.MAX_VALUE;
+		for(int i = 0; i < members.length; i++)
+		{
+			int length = members[i].getQueueLength();
+			if(i != skip && length < bestLength)
+			{
+				best = i;
+				bestLength = length;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 *  Adds one read latency and, every RECOMPUTE_EVERY
+	 *  samples, moves the hedge threshold to the configured
+	 *  percentile of the samples kept.
+	 */
+	private synchronized void recordLatency(long nanos)
+	{
+		latencies[sampleNext] = nanos;
+		sampleNext = (sampleNext + 1) % SAMPLES;
+		sampleCount++;
+		if(sampleCount >= MIN_SAMPLES && sampleCount % RECOMPUTE_EVERY == 0)
+		{
+			int kept = (int)Math.min(sampleCount, SAMPLES);
+			long[] sorted = Arrays.copyOf(latencies, kept);
+			Arrays.sort(sorted);
+			hedgeNanos = Math.max(1, sorted[kept * hedgePercentile / 100]);
+		}
+	}
+}
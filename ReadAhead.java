@@ -0,0 +1,238 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  ReadAhead detects sequential read streams in one Cache and
+ *  prefetches the next blocks of each stream on a daemon
+ *  thread, so a streaming reader mostly hits in the cache
+ *  instead of waiting for the disk on every block.
+ *
+ *  A stream is a run of reads of consecutive blocks. Its
+ *  window (how many blocks are kept in flight ahead of the
+ *  reader) grows by one each time a prefetched block is
+ *  hit, and halves each time one is evicted unused.
+ *
+ *  In a ShardedCache each shard only owns extents of
+ *  shardExtent blocks, so a stream is never prefetched past
+ *  the end of its extent; the shard owning the next extent
+ *  picks the stream up from there.
+ *
+ *  NOTE:	Everything except isPrefetched(), continuesStream()
+ *  		and run() is called under the cache lock.
+ */
+
+public class ReadAhead extends Thread {
+	private static final int STREAMS = 8;		// Streams tracked at once
+	private static final int QUEUE_SIZE = 256;	// Pending prefetches
+
+	private Cache cache = null;
+	private int initialWindow;
+	private int maxWindow;
+	private int extent;			// Blocks owned per range, 0 if all of them
+
+	// Stream table
+	private int[] streamNext = new int[STREAMS];		// Block expected next, -1 if unused
+	private int[] streamWindow = new int[STREAMS];		// Blocks to keep ahead
+	private int[] streamIssued = new int[STREAMS];		// Highest block queued so far
+	private long[] streamLastUse = new long[STREAMS];
+	private long clock = 0;
+
+	// Stream that prefetched each frame, -1 if the frame
+	// was not prefetched or has been used since
+	private volatile int[] prefetchedBy = null;
+
+	// Ring buffer of (block, stream) requests for the thread
+	private int[] queueBlock = new int[QUEUE_SIZE];
+	private int[] queueStream = new int[QUEUE_SIZE];
+	private int queueHead = 0;
+	private int queueSize = 0;
+
+	public ReadAhead(Cache cache, int frames, CacheOptions options)
+	{
+		this.cache = cache;
+		initialWindow = Math.max(1, options.readAheadInitial);
+		maxWindow = Math.max(initialWindow, options.readAheadMax);
+		extent = (options.shards > 1) ? Math.max(1, options.shardExtent) : 0;
+		prefetchedBy = new int[frames];
+		java.util.Arrays.fill(prefetchedBy, -1);
+		java.util.Arrays.fill(streamNext, -1);
+		setDaemon(true);
+		setName("ReadAhead");
+	}
+
+	// True if frame holds a prefetched block not read yet
+	public boolean isPrefetched(int frame)
+	{
+		// Frame may come from a table the cache has just resized away
+		int[] marks = prefetchedBy;
+		return frame < marks.length && marks[frame] != -1;
+	}
+
+	/*
+	 *  True if blockId is the block some stream expects next.
+	 *  Read without the lock, so only a hint for lock-free hits
+	 *  on whether onRead() is worth taking the lock for.
+	 */
+	public boolean continuesStream(int blockId)
+	{
+		for(int s = 0; s < STREAMS; s++)
+		{
+			if(streamNext[s] == blockId)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Cache now has frames frames; old marks no longer apply
+	public void resize(int frames)
+	{
+		int[] marks = new int[frames];
+		java.util.Arrays.fill(marks, -1);
+		prefetchedBy = marks;
+	}
+
+	/*
+	 *  Called for every read served under the cache lock,
+	 *  hit or miss. Detects streams and queues prefetches.
+	 */
+	public void onRead(int blockId, int frame)
+	{
+		clock++;
+		boolean wasPrefetched = (frame > -1 && prefetchedBy[frame] != -1);
+		if(wasPrefetched)
+		{
+			prefetchedBy[frame] = -1;
+		}
+
+		int s = findStream(blockId);
+		if(s == -1)
+		{
+			// Possible start of a new stream, nothing prefetched
+			// until it proves sequential with a second read.
+			s = oldestStream();
+			streamNext[s] = blockId + 1;
+			streamWindow[s] = initialWindow;
+			streamIssued[s] = blockId;
+			streamLastUse[s] = clock;
+			return;
+		}
+
+		streamNext[s] = blockId + 1;
+		streamLastUse[s] = clock;
+		if(wasPrefetched && streamWindow[s] < maxWindow)
+		{
+			streamWindow[s]++;
+		}
+
+		// Keep window blocks queued ahead of the reader,
+		// within the extent this cache owns
+		int target = blockId + streamWindow[s];
+		if(extent > 0)
+		{
+			target = Math.min(target, (blockId / extent + 1) * extent - 1);
+		}
+		int first = Math.max(streamIssued[s], blockId) + 1;
+		for(int b = first; b <= target; b++)
+		{
+			enqueue(b, s);
+		}
+		streamIssued[s] = Math.max(streamIssued[s], target);
+	}
+
+	// A prefetched block now sits in frame
+	public void markPrefetched(int frame, int stream)
+	{
+		prefetchedBy[frame] = stream;
+	}
+
+	/*
+	 *  Frame is being evicted or invalidated. If it was
+	 *  prefetched and never read, its stream's window
+	 *  was too large.
+	 */
+	public void onEvict(int frame)
+	{
+		int s = prefetchedBy[frame];
+		if(s != -1)
+		{
+			prefetchedBy[frame] = -1;
+			streamWindow[s] = Math.max(1, streamWindow[s] / 2);
+		}
+	}
+
+	// Frame was flushed; says nothing about the window
+	public void onInvalidate(int frame)
+	{
+		prefetchedBy[frame] = -1;
+	}
+
+	// Prefetching thread
+	public void run()
+	{
+		while(true)
+		{
+			int blockId;
+			int stream;
+			synchronized(this)
+			{
+				while(queueSize == 0)
+				{
+					try
+					{
+						wait();
+					}
+					catch(InterruptedException ex)
+					{
+						return;
+					}
+				}
+				blockId = queueBlock[queueHead];
+				stream = queueStream[queueHead];
+				queueHead = (queueHead + 1) % QUEUE_SIZE;
+				queueSize--;
+			}
+			cache.prefetch(blockId, stream);
+		}
+	}
+
+	private synchronized void enqueue(int blockId, int stream)
+	{
+		if(queueSize == QUEUE_SIZE)
+		{
+			// Dropping a prefetch is always safe
+			return;
+		}
+		int tail = (queueHead + queueSize) % QUEUE_SIZE;
+		queueBlock[tail] = blockId;
+		queueStream[tail] = stream;
+		queueSize++;
+		notify();
+	}
+
+	private int findStream(int blockId)
+	{
+		for(int s = 0; s < STREAMS; s++)
+		{
+			if(streamNext[s] == blockId)
+			{
+				return s;
+			}
+		}
+		return -1;
+	}
+
+	private int oldestStream()
+	{
+		int oldest = 0;
+		for(int s = 1; s < STREAMS; s++)
+		{
+			if(streamLastUse[s] < streamLastUse[oldest])
+			{
+				oldest = s;
+			}
+		}
+		return oldest;
+	}
+}
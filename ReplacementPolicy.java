@@ -0,0 +1,35 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  Decides which cache frame is replaced on a miss. The
+ *  cache tells the policy about every hit, fill, eviction
+ *  and invalidation, then asks it for a victim when no
+ *  frame is free. All calls are made under the cache lock.
+ */
+
+public interface ReplacementPolicy {
+	// blockId was found in frame
+	void onHit(int frame, int blockId);
+
+	// blockId was loaded into frame (which was free or just evicted)
+	void onFill(int frame, int blockId);
+
+	// blockId is being evicted from frame to make room for another block
+	void onEvict(int frame, int blockId);
+
+	// blockId left frame without being replaced (flush)
+	void onInvalidate(int frame, int blockId);
+
+	// Returns the frame to replace for missing blockId, -1 if none.
+	// A dirty victim is written back by the cache.
+	int selectVictim(int blockId);
+
+	// True if the policy only needs the frame reference bits on a hit,
+	// so hits may be served lock-free without calling onHit().
+	boolean usesReferenceBits();
+
+	// True if blockId in frame is outside the set the policy protects,
+	// so a speculative read ahead may replace it.
+	boolean isCold(int frame, int blockId);
+}
@@ -0,0 +1,318 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  ShardedCache partitions the disk blocks into several
+ *  independent Cache shards. Every shard has its own frames,
+ *  clock hand and lock, so threads touching blocks in
+ *  different shards never wait on each other. sync() and
+ *  flush() visit every shard.
+ *
+ *  Blocks go to shards in extents of shardExtent consecutive
+ *  blocks, by a hash of the extent number. Neighbouring blocks
+ *  therefore share a shard, so a shard's write-back runs and
+ *  read-ahead streams see them, while different extents still
+ *  spread over all shards.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+public class ShardedCache implements BlockCache {
+	private Cache[] shards = null;
+	private int extent;				// Consecutive blocks per shard range
+
+	/*
+	 *  Constructor with blockSize, total cacheBlocks and the
+	 *  options, which give the number of shards. Frames are
+	 *  split as evenly as possible.
+	 */
+	public ShardedCache(int blkSize, int cacheBlocks, CacheOptions options)
+	{
+		int shardCount = options.shards;
+		if(shardCount < 1 || cacheBlocks < shardCount)
+		{
+			throw new IllegalArgumentException("Error in ShardedCache(int blockSize, int cacheBlocks, CacheOptions options): "
+					+ "need 1 <= shards <= cacheBlocks");
+		}
+
+		extent = Math.max(1, options.shardExtent);
+		shards = new Cache[shardCount];
+		for(int i = 0; i < shardCount; i++)
+		{
+			// First (cacheBlocks % shardCount) shards get one extra frame
+			int frames = cacheBlocks / shardCount + (i < cacheBlocks % shardCount ? 1 : 0);
+			shards[i] = new Cache(blkSize, frames, options);
+		}
+	}
+
+	// Picks the shard responsible for blockId. Hashing spreads
+	// consecutive extents over all shards.
+	private Cache shardFor(int blockId)
+	{
+		int h = (blockId / extent) * 0x9E3779B9;
+		h ^= (h >>> 16);
+		return shards[(h & 0x7fffffff) % shards.length];
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		return shardFor(blockId).read(blockId, buffer);
+	}
+
+	public boolean write(int blockId, byte buffer[])
+	{
+		return shardFor(blockId).write(blockId, buffer);
+	}
+
+	public boolean readPartial(int blockId, int offset, byte buffer[])
+	{
+		return shardFor(blockId).readPartial(blockId, offset, buffer);
+	}
+
+	public boolean writePartial(int blockId, int offset, byte buffer[])
+	{
+		return shardFor(blockId).writePartial(blockId, offset, buffer);
+	}
+
+	public ByteBuffer pin(int blockId, boolean write)
+	{
+		return shardFor(blockId).pin(blockId, write);
+	}
+
+	public void unpin(int blockId, boolean write)
+	{
+		shardFor(blockId).unpin(blockId, write);
+	}
+
+	// Every shard has its own worker, so misses in
+	// different shards are served in parallel
+	public CompletableFuture<Boolean> readAsync(int blockId, byte buffer[])
+	{
+		return shardFor(blockId).readAsync(blockId, buffer);
+	}
+
+	public CompletableFuture<Boolean> writeAsync(int blockId, byte buffer[])
+	{
+		return shardFor(blockId).writeAsync(blockId, buffer);
+	}
+
+	// Each shard serves its part of the batch under its own lock
+	public boolean readv(int blockIds[], byte buffers[][])
+	{
+		if(blockIds.length != buffers.length)
+		{
+			throw new IllegalArgumentException("Error in ShardedCache.readv(blockIds[], buffers[][]): "
+					+ "arrays differ in length");
+		}
+		boolean success = true;
+		for(int s = 0; s < shards.length; s++)
+		{
+			int[] ids = idsForShard(s, blockIds);
+			if(ids.length > 0)
+			{
+				success &= shards[s].readv(ids, buffersForShard(s, blockIds, buffers, ids.length));
+			}
+		}
+		return success;
+	}
+
+	public boolean writev(int blockIds[], byte buffers[][])
+	{
+		if(blockIds.length != buffers.length)
+		{
+			throw new IllegalArgumentException("Error in ShardedCache.writev(blockIds[], buffers[][]): "
+					+ "arrays differ in length");
+		}
+		boolean success = true;
+		for(int s = 0; s < shards.length; s++)
+		{
+			int[] ids = idsForShard(s, blockIds);
+			if(ids.length > 0)
+			{
+				success &= shards[s].writev(ids, buffersForShard(s, blockIds, buffers, ids.length));
+			}
+		}
+		return success;
+	}
+
+	// Block ids of the batch that belong to shard s, in batch order
+	private int[] idsForShard(int s, int blockIds[])
+	{
+		int count = 0;
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(shardFor(blockIds[i]) == shards[s])
+			{
+				count++;
+			}
+		}
+		int[] ids = new int[count];
+		count = 0;
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(shardFor(blockIds[i]) == shards[s])
+			{
+				ids[count++] = blockIds[i];
+			}
+		}
+		return ids;
+	}
+
+	// Buffers matching idsForShard(s, blockIds), sharing the caller's arrays
+	private byte[][] buffersForShard(int s, int blockIds[], byte buffers[][], int count)
+	{
+		byte[][] result = new byte[count][];
+		count = 0;
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(shardFor(blockIds[i]) == shards[s])
+			{
+				result[count++] = buffers[i];
+			}
+		}
+		return result;
+	}
+
+	// Each shard is synced under its own lock only
+	public void sync()
+	{
+		for(int i = 0; i < shards.length; i++)
+		{
+			shards[i].sync();
+		}
+	}
+
+	public void flush()
+	{
+		for(int i = 0; i < shards.length; i++)
+		{
+			shards[i].flush();
+		}
+	}
+
+	public void rawWritten(int blockId)
+	{
+		shardFor(blockId).rawWritten(blockId);
+	}
+
+	// Returns total number of frames over all shards
+	public int getTableSize()
+	{
+		int total = 0;
+		for(int i = 0; i < shards.length; i++)
+		{
+			total = total + shards[i].getTableSize();
+		}
+		return total;
+	}
+
+	// Returns total number of dirty frames over all shards
+	public int getDirtyCount()
+	{
+		int total = 0;
+		for(int i = 0; i < shards.length; i++)
+		{
+			total = total + shards[i].getDirtyCount();
+		}
+		return total;
+	}
+
+	// Frames are split over the shards as in the constructor
+	public boolean resize(int cacheBlocks)
+	{
+		if(cacheBlocks < shards.length)
+		{
+			throw new IllegalArgumentException("Error in ShardedCache.resize(int cacheBlocks): "
+					+ "need shards <= cacheBlocks");
+		}
+		// A pinned shard would refuse after others had resized
+		for(int i = 0; i < shards.length; i++)
+		{
+			if(shards[i].isPinned())
+			{
+				SysLib.cerr("Error in ShardedCache.resize(cacheBlocks). Blocks are pinned. \n");
+				return false;
+			}
+		}
+		int[] before = new int[shards.length];
+		for(int i = 0; i < shards.length; i++)
+		{
+			before[i] = shards[i].getTableSize();
+			int frames = cacheBlocks / shards.length + (i < cacheBlocks % shards.length ? 1 : 0);
+			if(!shards[i].resize(frames))
+			{
+				// Pinned since the check, or a write-back failed:
+				// put the shards already done back as they were
+				for(int j = 0; j < i; j++)
+				{
+					shards[j].resize(before[j]);
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public long[] snapshot()
+	{
+		long[][] parts = new long[shards.length][];
+		int total = 0;
+		for(int i = 0; i < shards.length; i++)
+		{
+			parts[i] = shards[i].snapshot();
+			total = total + parts[i].length;
+		}
+		long[] entries = new long[total];
+		total = 0;
+		for(int i = 0; i < shards.length; i++)
+		{
+			System.arraycopy(parts[i], 0, entries, total, parts[i].length);
+			total = total + parts[i].length;
+		}
+		return entries;
+	}
+
+	// Each shard warms up with the blocks that hash to it
+	public void warm(long entries[])
+	{
+		for(int s = 0; s < shards.length; s++)
+		{
+			int count = 0;
+			for(int i = 0; i < entries.length; i++)
+			{
+				if(shardFor((int)(entries[i] >>> 1)) == shards[s])
+				{
+					count++;
+				}
+			}
+			long[] part = new long[count];
+			count = 0;
+			for(int i = 0; i < entries.length; i++)
+			{
+				if(shardFor((int)(entries[i] >>> 1)) == shards[s])
+				{
+					part[count++] = entries[i];
+				}
+			}
+			shards[s].warm(part);
+		}
+	}
+
+	// Sum of every shard's stats, taken one shard at a time
+	public CacheStats getStats()
+	{
+		CacheStats total = new CacheStats();
+		for(int i = 0; i < shards.length; i++)
+		{
+			shards[i].getStats().addTo(total);
+		}
+		return total;
+	}
+
+	// Returns number of shards
+	public int getShardCount()
+	{
+		return shards.length;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  BlockDevice view of the simulated Disk thread. The Disk
+ *  takes one request at a time, so callers line up in FIFO
+ *  order and each one parks on its own thread:
+ *
+ *  	- only the owner (the thread whose request is in the
+ *  	  Disk) is woken by the Disk's interrupt, through
+ *  	  diskInterrupt(), and
+ *  	- when the owner is done it hands the Disk directly to
+ *  	  the next thread in line and wakes only that one.
+ *
+ *  Nobody wakes up just to find the Disk busy and sleep
+ *  again, unlike with the shared COND_DISK_REQ and
+ *  COND_DISK_FIN conditions of the ioQueue.
+ */
+
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.LockSupport;
+
+public class SimulatedDisk implements BlockDevice {
+	private Disk disk = null;
+	private int blockCount;
+
+	private volatile Thread owner = null;		// Thread whose request is in the Disk
+	private ArrayDeque<Thread> waiters = new ArrayDeque<Thread>();
+
+	public SimulatedDisk(Disk disk, int blocks)
+	{
+		this.disk = disk;
+		blockCount = blocks;
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		acquire();
+		try
+		{
+			while(disk.read(blockId, buffer) == false)
+			{
+				// Disk still wrapping up the previous request
+				LockSupport.parkNanos(this, 100000);
+			}
+			finish();
+		}
+		finally
+		{
+			release();
+		}
+		return true;
+	}
+
+	public boolean write(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		acquire();
+		try
+		{
+			while(disk.write(blockId, buffer) == false)
+			{
+				LockSupport.parkNanos(this, 100000);
+			}
+			finish();
+		}
+		finally
+		{
+			release();
+		}
+		return true;
+	}
+
+	public boolean sync()
+	{
+		acquire();
+		try
+		{
+			while(disk.sync() == false)
+			{
+				LockSupport.parkNanos(this, 100000);
+			}
+			finish();
+		}
+		finally
+		{
+			release();
+		}
+		return true;
+	}
+
+	/*
+	 *  Called from Kernel's INTERRUPT_DISK handler when the
+	 *  Disk finishes a request. Wakes the owner only.
+	 */
+	public void diskInterrupt()
+	{
+		Thread current = owner;
+		if(current != null)
+		{
+			LockSupport.unpark(current);
+		}
+	}
+
+	public int getBlockSize()
+	{
+		return Disk.blockSize;
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	// Parks until the Disk reports the owner's request done.
+	// An interrupt that beat us here leaves a permit, so
+	// park() returns at once and nothing is lost.
+	private void finish()
+	{
+		while(disk.testAndResetReady() == false)
+		{
+			LockSupport.park(this);
+		}
+	}
+
+	// Waits for this thread's turn at the Disk
+	private void acquire()
+	{
+		Thread me = Thread.currentThread();
+		synchronized(this)
+		{
+			if(owner == null)
+			{
+				owner = me;
+				return;
+			}
+			waiters.addLast(me);
+		}
+		while(owner != me)
+		{
+			LockSupport.park(this);
+		}
+	}
+
+	// Hands the Disk to the next thread in line, if any
+	private synchronized void release()
+	{
+		Thread next = waiters.pollFirst();
+		owner = next;
+		if(next != null)
+		{
+			LockSupport.unpark(next);
+		}
+	}
+}
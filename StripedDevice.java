@@ -0,0 +1,129 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  RAID-0: spreads the block address space over several
+ *  member devices, stripeUnit blocks at a time.
+ *
+ *  	stripe	= blockId / stripeUnit
+ *  	member	= stripe % members
+ *  	block	= (stripe / members) * stripeUnit + blockId % stripeUnit
+ *
+ *  Every member has its own DiskQueue, so requests for
+ *  different members are served at the same time. A vectored
+ *  read or write queues all of its blocks before waiting,
+ *  which keeps every member busy at once.
+ */
+
+public class StripedDevice implements BlockDevice {
+	private DiskQueue[] members = null;
+	private int stripeUnit;
+	private int blockCount;
+
+	public StripedDevice(DiskQueue[] members, int stripeUnit)
+	{
+		if(members.length < 1 || stripeUnit < 1)
+		{
+			throw new IllegalArgumentException("Error in StripedDevice(DiskQueue[] members, int stripeUnit): "
+					+ "need at least one member and stripeUnit > 0");
+		}
+		this.members = members;
+		this.stripeUnit = stripeUnit;
+		// Only whole stripe rows present on every member are usable
+		int smallest = Integer.MAX_VALUE;
+		for(int i = 0; i < members.length; i++)
+		{
+			smallest = Math.min(smallest, members[i].getBlockCount());
+		}
+		blockCount = (smallest / stripeUnit) * stripeUnit * members.length;
+	}
+
+	public boolean read(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		return memberOf(blockId).read(memberBlock(blockId), buffer);
+	}
+
+	public boolean write(int blockId, byte buffer[])
+	{
+		if(blockId < 0 || blockId >= blockCount)
+		{
+			return false;
+		}
+		return memberOf(blockId).write(memberBlock(blockId), buffer);
+	}
+
+	public boolean readv(int blockIds[], byte buffers[][])
+	{
+		return submitAll(DiskRequest.READ, blockIds, buffers);
+	}
+
+	public boolean writev(int blockIds[], byte buffers[][])
+	{
+		return submitAll(DiskRequest.WRITE, blockIds, buffers);
+	}
+
+	// Syncs every member at once
+	public boolean sync()
+	{
+		DiskRequest[] requests = new DiskRequest[members.length];
+		for(int i = 0; i < members.length; i++)
+		{
+			requests[i] = members[i].submit(DiskRequest.SYNC, -1, null);
+		}
+		boolean success = true;
+		for(int i = 0; i < requests.length; i++)
+		{
+			success &= requests[i].await();
+		}
+		return success;
+	}
+
+	public int getBlockSize()
+	{
+		return members[0].getBlockSize();
+	}
+
+	public int getBlockCount()
+	{
+		return blockCount;
+	}
+
+	// Queues every block on its member, then waits for all of them
+	private boolean submitAll(int op, int blockIds[], byte buffers[][])
+	{
+		boolean success = true;
+		DiskRequest[] requests = new DiskRequest[blockIds.length];
+		for(int i = 0; i < blockIds.length; i++)
+		{
+			if(blockIds[i] < 0 || blockIds[i] >= blockCount)
+			{
+				success = false;
+				continue;
+			}
+			requests[i] = memberOf(blockIds[i]).submit(op, memberBlock(blockIds[i]), buffers[i]);
+		}
+		for(int i = 0; i < requests.length; i++)
+		{
+			if(requests[i] != null)
+			{
+				success &= requests[i].await();
+			}
+		}
+		return success;
+	}
+
+	private DiskQueue memberOf(int blockId)
+	{
+		return members[(blockId / stripeUnit) % members.length];
+	}
+
+	private int memberBlock(int blockId)
+	{
+		int stripe = blockId / stripeUnit;
+		return (stripe / members.length) * stripeUnit + blockId % stripeUnit;
+	}
+}
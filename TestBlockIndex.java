@@ -0,0 +1,82 @@
+import java.util.HashMap;
+import java.util.Random;
+
+/*
+ *  Checks BlockIndex against a HashMap under random puts,
+ *  removes and lookups. Block numbers are drawn from a few
+ *  narrow ranges so probe runs collide and backward-shift
+ *  deletion has long clusters to repair.
+ *
+ *  Usage: l TestBlockIndex [operations]
+ */
+class TestBlockIndex extends Thread {
+	private int operations = 200000;
+	private int capacity = 256;
+
+	public TestBlockIndex( String[] args ) {
+		if ( args.length > 0 )
+			operations = Integer.parseInt( args[0] );
+	}
+
+	public void run( ) {
+		Random rand = new Random( 430 );
+		BlockIndex index = new BlockIndex( capacity );
+		HashMap<Integer, Integer> model = new HashMap<Integer, Integer>( );
+		int failures = 0;
+
+		for ( int op = 0; op < operations && failures < 10; op++ ) {
+			// Consecutive blocks, plus a few far away
+			int blockId = ( rand.nextInt( 8 ) == 0 ) ? rand.nextInt( Integer.MAX_VALUE )
+					: rand.nextInt( 4 ) * 100000 + rand.nextInt( 2 * capacity );
+			int choice = rand.nextInt( 3 );
+			if ( choice == 0 && model.size( ) < capacity ) {
+				int frame = rand.nextInt( capacity );
+				index.put( blockId, frame );
+				model.put( blockId, frame );
+			} else if ( choice == 1 ) {
+				Integer expected = model.remove( blockId );
+				int removed = index.remove( blockId );
+				if ( removed != ( expected == null ? -1 : expected ) ) {
+					SysLib.cout( "TestBlockIndex: remove(" + blockId + ") returned " + removed
+							+ ", expected " + expected + "\n" );
+					failures++;
+				}
+			}
+
+			Integer expected = model.get( blockId );
+			if ( index.get( blockId ) != ( expected == null ? -1 : expected ) ) {
+				SysLib.cout( "TestBlockIndex: get(" + blockId + ") returned " + index.get( blockId )
+						+ ", expected " + expected + "\n" );
+				failures++;
+			}
+			if ( index.size( ) != model.size( ) ) {
+				SysLib.cout( "TestBlockIndex: size " + index.size( ) + ", expected "
+						+ model.size( ) + "\n" );
+				failures++;
+			}
+
+			// Now and then every mapping is checked, to catch
+			// entries lost while shifting a cluster back
+			if ( op % 10000 == 0 ) {
+				for ( Integer key : model.keySet( ) ) {
+					if ( index.get( key ) != model.get( key ) ) {
+						SysLib.cout( "TestBlockIndex: lost block " + key + "\n" );
+						failures++;
+					}
+				}
+			}
+		}
+
+		index.clear( );
+		if ( index.size( ) != 0 || index.get( 0 ) != -1 ) {
+			SysLib.cout( "TestBlockIndex: clear() left mappings behind\n" );
+			failures++;
+		}
+
+		if ( failures == 0 )
+			SysLib.cout( "TestBlockIndex: " + operations + " operations OK\n" );
+		else
+			SysLib.cout( "TestBlockIndex: " + failures + " failures\n" );
+		SysLib.exit( );
+	}
+}
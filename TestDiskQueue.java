@@ -0,0 +1,136 @@
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/*
+ *  Checks the order DiskQueue serves requests in. A gate
+ *  request holds the dispatcher inside the device while the
+ *  rest are queued, so the whole queue is ordered at once.
+ *  The head is then at the gate's block.
+ *
+ *  Usage: l TestDiskQueue
+ */
+class TestDiskQueue extends Thread {
+	private int failures = 0;
+
+	// Records every transfer; the first one waits for open()
+	private static class RecordingDevice implements BlockDevice {
+		private ArrayList<String> served = new ArrayList<String>( );
+		private CountDownLatch entered = new CountDownLatch( 1 );
+		private CountDownLatch gate = new CountDownLatch( 1 );
+
+		private synchronized void record( String what ) {
+			served.add( what );
+		}
+
+		private void pass( ) {
+			entered.countDown( );
+			try {
+				gate.await( );
+			} catch ( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+			}
+		}
+
+		public boolean read( int blockId, byte buffer[] ) {
+			pass( );
+			record( "r" + blockId );
+			return true;
+		}
+
+		public boolean write( int blockId, byte buffer[] ) {
+			pass( );
+			record( "w" + blockId );
+			return true;
+		}
+
+		public boolean readv( int blockIds[], byte buffers[][] ) {
+			return false;
+		}
+
+		public boolean writev( int blockIds[], byte buffers[][] ) {
+			return false;
+		}
+
+		public boolean sync( ) {
+			pass( );
+			record( "sync" );
+			return true;
+		}
+
+		public int getBlockSize( ) {
+			return Disk.blockSize;
+		}
+
+		public int getBlockCount( ) {
+			return 1000;
+		}
+
+		public synchronized String getServed( ) {
+			return served.toString( );
+		}
+	}
+
+	public TestDiskQueue( String[] args ) {
+	}
+
+	/*
+	 *  Queues ops ("r" or "w" + block, or "sync") behind a read
+	 *  of gateBlock, waits pause ms, lets them all through and
+	 *  compares the order they were served in with expected.
+	 */
+	private void check( String what, long deadline, int gateBlock, String[] ops, long pause,
+			String expected ) {
+		RecordingDevice device = new RecordingDevice( );
+		DiskQueue queue = new DiskQueue( device, deadline );
+		byte[] buffer = new byte[Disk.blockSize];
+		ArrayList<DiskRequest> requests = new ArrayList<DiskRequest>( );
+
+		requests.add( queue.submit( DiskRequest.READ, gateBlock, buffer ) );
+		try {
+			device.entered.await( );
+			for ( int i = 0; i < ops.length; i++ ) {
+				if ( ops[i].equals( "sync" ) )
+					requests.add( queue.submit( DiskRequest.SYNC, -1, null ) );
+				else
+					requests.add( queue.submit( ops[i].startsWith( "w" ) ? DiskRequest.WRITE
+							: DiskRequest.READ, Integer.parseInt( ops[i].substring( 1 ) ), buffer ) );
+			}
+			Thread.sleep( pause );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+		}
+		device.gate.countDown( );
+		for ( int i = 0; i < requests.size( ); i++ )
+			requests.get( i ).await( );
+
+		if ( !device.getServed( ).equals( expected ) ) {
+			SysLib.cout( "TestDiskQueue: " + what + " served " + device.getServed( )
+					+ ", expected " + expected + "\n" );
+			failures++;
+		}
+	}
+
+	public void run( ) {
+		// Ascending past the head, then wrap; one block in arrival order
+		check( "c-look", 0, 50, new String[] { "r70", "r10", "r50", "r90", "r30", "w50" }, 0,
+				"[r50, r70, r90, r10, r30, r50, w50]" );
+
+		// The head's own block waits for the next sweep
+		check( "head block", 0, 5, new String[] { "r5", "w5", "r5", "r100" }, 0,
+				"[r5, r100, r5, w5, r5]" );
+
+		// Everything queued before a sync is served before it
+		check( "sync barrier", 0, 50, new String[] { "r20", "sync", "r10" }, 0,
+				"[r50, r20, sync, r10]" );
+
+		// Past its deadline, the oldest request goes first
+		check( "deadline", 1, 50, new String[] { "r10", "r60", "r70" }, 20,
+				"[r50, r10, r60, r70]" );
+
+		if ( failures == 0 )
+			SysLib.cout( "TestDiskQueue: OK\n" );
+		else
+			SysLib.cout( "TestDiskQueue: " + failures + " failures\n" );
+		SysLib.exit( );
+	}
+}
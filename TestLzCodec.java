@@ -0,0 +1,95 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ *  Round-trip checks for LzCodec: every block must decompress
+ *  to exactly the bytes it was compressed from and fit in
+ *  maxCompressedLength(). One codec is reused for every block,
+ *  as CompressedTier does, so its hash table is carried over
+ *  between calls.
+ *
+ *  Usage: l TestLzCodec [blocks]
+ */
+class TestLzCodec extends Thread {
+	private int blocks = 2000;
+	private int failures = 0;
+	private LzCodec codec = new LzCodec( );
+	private Random rand = new Random( 430 );
+
+	public TestLzCodec( String[] args ) {
+		if ( args.length > 0 )
+			blocks = Integer.parseInt( args[0] );
+	}
+
+	// Compresses and decompresses length bytes of data
+	private void roundTrip( String kind, byte[] data, int length ) {
+		byte[] packed = new byte[LzCodec.maxCompressedLength( length )];
+		int packedLength = codec.compress( data, length, packed );
+		if ( packedLength > packed.length ) {
+			SysLib.cout( "TestLzCodec: " + kind + " of " + length + " bytes compressed to "
+					+ packedLength + ", over the bound\n" );
+			failures++;
+			return;
+		}
+
+		byte[] unpacked = new byte[length];
+		int unpackedLength;
+		try {
+			unpackedLength = codec.decompress( packed, packedLength, unpacked );
+		} catch ( RuntimeException e ) {
+			// A corrupt stream runs off the end of an array
+			unpackedLength = -1;
+		}
+		if ( unpackedLength != length
+				|| !Arrays.equals( unpacked, Arrays.copyOf( data, length ) ) ) {
+			SysLib.cout( "TestLzCodec: " + kind + " of " + length + " bytes did not round-trip\n" );
+			failures++;
+		}
+	}
+
+	// Bytes repeating with a random period, with some noise
+	private void fillRepetitive( byte[] data ) {
+		int period = 1 + rand.nextInt( 64 );
+		int base = rand.nextInt( );
+		for ( int i = 0; i < data.length; i++ )
+			data[i] = ( rand.nextInt( 16 ) == 0 ) ? ( byte )rand.nextInt( )
+					: ( byte )( base + i % period );
+	}
+
+	public void run( ) {
+		byte[] data = new byte[Disk.blockSize];
+
+		roundTrip( "zero block", data, data.length );
+		for ( int length = 0; length <= 32; length++ )
+			roundTrip( "short block", data, length );
+
+		// Long literal runs and long matches need extra length bytes
+		byte[] large = new byte[70000];
+		rand.nextBytes( large );
+		roundTrip( "random run", large, large.length );
+		Arrays.fill( large, ( byte )7 );
+		roundTrip( "constant run", large, large.length );
+
+		for ( int i = 0; i < blocks; i++ ) {
+			switch ( i % 3 ) {
+			case 0:
+				rand.nextBytes( data );
+				break;
+			case 1:
+				fillRepetitive( data );
+				break;
+			default:
+				// Test4's pattern: one value per block
+				Arrays.fill( data, ( byte )i );
+				break;
+			}
+			roundTrip( "block " + i, data, data.length );
+		}
+
+		if ( failures == 0 )
+			SysLib.cout( "TestLzCodec: " + blocks + " blocks OK\n" );
+		else
+			SysLib.cout( "TestLzCodec: " + failures + " failures\n" );
+		SysLib.exit( );
+	}
+}
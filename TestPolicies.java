@@ -0,0 +1,151 @@
+import java.util.HashMap;
+
+/*
+ *  Checks the victims the replacement policies choose. Each
+ *  case drives a policy the way Cache does: a miss takes a
+ *  free frame or evicts selectVictim()'s frame, a hit calls
+ *  onHit() and sets the frame's reference bit.
+ *
+ *  Usage: l TestPolicies
+ */
+class TestPolicies extends Thread {
+	private int failures = 0;
+
+	// Frames and policy of the case being run
+	private FrameTable frames;
+	private ReplacementPolicy policy;
+	private HashMap<Integer, Integer> resident;
+
+	public TestPolicies( String[] args ) {
+	}
+
+	private void begin( String name, int frameCount ) {
+		frames = new FrameTable( Disk.blockSize, frameCount, false );
+		CacheOptions options = new CacheOptions( );
+		options.policy = name;
+		policy = options.createPolicy( frames );
+		resident = new HashMap<Integer, Integer>( );
+	}
+
+	// Touches blockId; returns the frame evicted for it, or -1
+	private int access( int blockId ) {
+		Integer frame = resident.get( blockId );
+		if ( frame != null ) {
+			policy.onHit( frame, blockId );
+			frames.setReferenced( frame );
+			return -1;
+		}
+		int victim = -1;
+		int free = frames.peekFree( );
+		if ( free == -1 ) {
+			victim = policy.selectVictim( blockId );
+			int oldBlock = frames.getBlock( victim );
+			policy.onEvict( victim, oldBlock );
+			resident.remove( oldBlock );
+			frames.invalidate( victim );
+			free = victim;
+		}
+		frames.setBlock( free, blockId );
+		frames.setReferenced( free );
+		resident.put( blockId, free );
+		policy.onFill( free, blockId );
+		return victim;
+	}
+
+	private void expect( String what, boolean ok ) {
+		if ( !ok ) {
+			SysLib.cout( "TestPolicies: " + what + " FAILED\n" );
+			failures++;
+		}
+	}
+
+	// Least recently used block goes first
+	private void testLru( ) {
+		begin( "lru", 4 );
+		for ( int b = 10; b < 14; b++ )
+			access( b );
+		access( 10 );
+		expect( "lru evicts the oldest untouched block",
+				access( 14 ) == 1 );				// block 11
+		access( 12 );
+		expect( "lru skips a block hit since",
+				access( 15 ) == 3 );				// block 13
+		expect( "lru then evicts the block hit longest ago",
+				access( 16 ) == 0 );				// block 10
+	}
+
+	// Classes (0,0), (0,1), (1,0), (1,1) in that order
+	private void testClock( ) {
+		begin( "clock", 4 );
+		for ( int b = 0; b < 4; b++ )
+			access( b );
+		frames.setDirty( 0 );						// (1, 1)
+		frames.setDirty( 2 );
+		frames.clearReferenced( 2 );				// (0, 1)
+		frames.clearReferenced( 3 );				// (0, 0)
+		expect( "clock takes a clean unreferenced frame first",
+				policy.selectVictim( 9 ) == 3 );
+
+		// Frame 3 is (1, 0) now: step 2 clears the reference
+		// bits of frames 0 and 1 while looking for (0, 1)
+		frames.setReferenced( 3 );
+		expect( "clock takes a dirty unreferenced frame next",
+				policy.selectVictim( 9 ) == 2 );
+		expect( "clock cleared the reference bits it passed",
+				!frames.isReferenced( 0 ) && !frames.isReferenced( 1 ) );
+		expect( "clock moves on from the hand",
+				policy.selectVictim( 9 ) == 1 );
+	}
+
+	// Blocks used twice (T2) outlive a scan of blocks used once
+	private void testArc( ) {
+		begin( "arc", 4 );
+		for ( int b = 0; b < 4; b++ )
+			access( b );
+		access( 0 );
+		access( 1 );
+		expect( "arc evicts from T1 first", access( 4 ) == 2 );	// block 2
+		for ( int b = 100; b < 120; b++ )
+			access( b );
+		expect( "arc keeps T2 blocks through a scan",
+				resident.containsKey( 0 ) && resident.containsKey( 1 ) );
+
+		// T1 holds only the last two scan blocks, 118 the older
+		int frame = resident.get( 118 );
+		expect( "arc evicts T1's tail", access( 200 ) == frame );
+	}
+
+	// A one-time scan only cycles the HIR frames
+	private void testLirs( ) {
+		begin( "lirs", 100 );						// 99 LIR frames, 1 HIR
+		for ( int b = 0; b < 99; b++ )
+			access( b );
+		for ( int b = 1000; b < 1300; b++ )
+			access( b );
+		boolean kept = true;
+		for ( int b = 0; b < 99; b++ )
+			kept &= resident.containsKey( b );
+		expect( "lirs keeps the LIR set through a scan", kept );
+
+		// Reused while still in the stack: promoted to LIR
+		access( 2000 );
+		access( 2001 );
+		access( 2000 );
+		for ( int b = 3000; b < 3300; b++ )
+			access( b );
+		expect( "lirs keeps a promoted block through a scan",
+				resident.containsKey( 2000 ) );
+	}
+
+	public void run( ) {
+		testLru( );
+		testClock( );
+		testArc( );
+		testLirs( );
+		if ( failures == 0 )
+			SysLib.cout( "TestPolicies: OK\n" );
+		else
+			SysLib.cout( "TestPolicies: " + failures + " failures\n" );
+		SysLib.exit( );
+	}
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/*
+ *  Checks that an all-zero block written through the cache
+ *  always reaches the disk, even after the cache saw the
+ *  block as zero and a raw write changed it behind its back.
+ *
+ *  Usage: l TestZeroWriteBack [block]
+ */
+class TestZeroWriteBack extends Thread {
+	private int block = 5;
+	private int failures = 0;
+
+	public TestZeroWriteBack( String[] args ) {
+		if ( args.length > 0 )
+			block = Integer.parseInt( args[0] );
+	}
+
+	// Block on disk must hold zeroes
+	private void expectZero( String what ) {
+		byte[] disk = new byte[Disk.blockSize];
+		SysLib.rawread( block, disk );
+		if ( !Arrays.equals( disk, new byte[Disk.blockSize] ) ) {
+			SysLib.cout( "TestZeroWriteBack: " + what + " left " + disk[0]
+					+ "s on block " + block + "\n" );
+			failures++;
+		}
+	}
+
+	public void run( ) {
+		byte[] zeros = new byte[Disk.blockSize];
+		byte[] sevens = new byte[Disk.blockSize];
+		byte[] buffer = new byte[Disk.blockSize];
+		Arrays.fill( sevens, ( byte )7 );
+
+		// Start from a zero block the cache has read
+		SysLib.rawwrite( block, zeros );
+		SysLib.cflush( );
+		SysLib.cread( block, buffer );
+
+		// Raw write, flush, then zeroes through the cache
+		SysLib.rawwrite( block, sevens );
+		SysLib.cflush( );
+		SysLib.cwrite( block, zeros );
+		SysLib.csync( );
+		expectZero( "raw write, cflush, cwrite of zeroes" );
+
+		// Same without the flush: the block stays cached
+		SysLib.cread( block, buffer );
+		SysLib.rawwrite( block, sevens );
+		SysLib.cwrite( block, zeros );
+		SysLib.csync( );
+		expectZero( "raw write, cwrite of zeroes" );
+
+		if ( failures == 0 )
+			SysLib.cout( "TestZeroWriteBack: OK\n" );
+		else
+			SysLib.cout( "TestZeroWriteBack: " + failures + " failures\n" );
+		SysLib.exit( );
+	}
+}
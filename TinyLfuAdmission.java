@@ -0,0 +1,89 @@
+/*
+ *  CSS 430
+ *  Lab 4, Paging
+ *
+ *  W-TinyLFU admission in front of the replacement policy.
+ *  Every missed block first enters a small window region
+ *  (about 1% of the frames, LRU ordered) that the policy
+ *  does not see. When the window overflows, its oldest
+ *  block is a candidate for the main region: it is only
+ *  admitted if the frequency sketch says it is used more
+ *  often than the policy's victim. Otherwise the candidate
+ *  itself is dropped, and blocks touched only once never
+ *  displace the popular ones.
+ *
+ *  Window frames are held in the FrameTable so that clock
+ *  scans skip them.
+ */
+
+public class TinyLfuAdmission {
+	private FrameTable frames = null;
+	private FrequencySketch sketch = null;
+	private FrameList window = null;
+	private int windowLimit;
+
+	public TinyLfuAdmission(FrameTable frames, CacheOptions options)
+	{
+		this.frames = frames;
+		int count = frames.getFrameCount();
+		sketch = new FrequencySketch(count);
+		window = new FrameList(count);
+		windowLimit = Math.max(1, count * options.windowPercent / 100);
+		windowLimit = Math.min(windowLimit, count - 1);
+	}
+
+	// Records an access to blockId, hit or miss
+	public void record(int blockId)
+	{
+		sketch.increment(blockId);
+	}
+
+	public boolean inWindow(int frame)
+	{
+		return window.contains(frame);
+	}
+
+	public boolean isWindowFull()
+	{
+		return window.size() >= windowLimit;
+	}
+
+	public boolean isWindowOverLimit()
+	{
+		return window.size() > windowLimit;
+	}
+
+	// Oldest block in the window, the next admission candidate
+	public int windowCandidate()
+	{
+		return window.tail();
+	}
+
+	// A freshly filled frame enters the window
+	public void addToWindow(int frame)
+	{
+		window.pushFront(frame);
+		frames.hold(frame);
+	}
+
+	public void onHit(int frame)
+	{
+		window.pushFront(frame);
+	}
+
+	// Frame leaves the window (graduated, evicted or invalidated)
+	public void removeFromWindow(int frame)
+	{
+		window.remove(frame);
+		frames.release(frame);
+	}
+
+	/*
+	 *  True if candidate block should replace victim block
+	 *  in the main region.
+	 */
+	public boolean admit(int candidateBlock, int victimBlock)
+	{
+		return sketch.frequency(candidateBlock) > sketch.frequency(victimBlock);
+	}
+}